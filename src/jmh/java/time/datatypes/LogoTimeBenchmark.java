@@ -0,0 +1,107 @@
+package time.datatypes;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import time.TimeEnums.PeriodType;
+
+/*
+ * Creating LogoTimes from strings (the default formats and a custom one) and the arithmetic that models do on
+ * them every tick.  The unboxed differences and isCloserToAThanB, which the scheduler and time series lookups use,
+ * should report no allocation under the gc profiler.  Only the parsing benchmarks are run once per date string, see
+ * Parsing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogoTimeBenchmark {
+	@State(Scope.Thread)
+	public static class Parsing {
+		@Param({"2012-01-02 03:04:05.678", "2012-1-2 3:04", "2012-01-02", "01-02"})
+		public String dateString;
+
+		LogoTime probe;
+
+		@Setup
+		public void setUp() throws Exception{
+			probe = new LogoTime("2000-01-01");
+		}
+	}
+
+	LogoTime datetime;
+	LogoTime later;
+	LogoTime between;
+	LogoTime date;
+	LogoTime laterDate;
+	LogoTime day;
+	LogoTime laterDay;
+
+	@Setup
+	public void setUp() throws Exception{
+		datetime = new LogoTime("2012-01-02 03:04:05.678");
+		later = new LogoTime("2013-07-15 12:00:00.000");
+		between = new LogoTime("2012-09-30 00:00:00.000");
+		date = new LogoTime("2012-01-02");
+		laterDate = new LogoTime("2013-07-15");
+		day = new LogoTime("01-02");
+		laterDay = new LogoTime("07-15");
+	}
+
+	@Benchmark
+	public Object create(Parsing parsing) throws Exception{
+		return new LogoTime(parsing.dateString);
+	}
+	@Benchmark
+	public Object parseDateString(Parsing parsing) throws Exception{
+		return parsing.probe.parseDateString(parsing.dateString);
+	}
+	@Benchmark
+	public Object createWithFormat() throws Exception{
+		return new LogoTime("02/01/2012 03:04", "dd/MM/yyyy HH:mm");
+	}
+	@Benchmark
+	public Object plusDays() throws Exception{
+		return datetime.plus(PeriodType.DAY, 1.5);
+	}
+	@Benchmark
+	public Object plusMonths() throws Exception{
+		return datetime.plus(PeriodType.MONTH, 1.0);
+	}
+	@Benchmark
+	public Object differenceInHours() throws Exception{
+		return datetime.getDifferenceBetween(PeriodType.HOUR, later);
+	}
+	@Benchmark
+	public double differenceInHoursUnboxed() throws Exception{
+		return datetime.differenceBetween(PeriodType.HOUR, later);
+	}
+	@Benchmark
+	public double differenceInDaysBetweenDates() throws Exception{
+		return date.differenceBetween(PeriodType.DAY, laterDate);
+	}
+	@Benchmark
+	public double differenceInDaysBetweenDays() throws Exception{
+		return day.differenceBetween(PeriodType.DAY, laterDay);
+	}
+	@Benchmark
+	public boolean isCloserToAThanB(){
+		return between.isCloserToAThanB(datetime, later);
+	}
+	@Benchmark
+	public Object differenceInMonths() throws Exception{
+		return datetime.getDifferenceBetween(PeriodType.MONTH, later);
+	}
+}
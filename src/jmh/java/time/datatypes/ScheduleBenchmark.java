@@ -0,0 +1,100 @@
+package time.datatypes;
+import java.util.concurrent.TimeUnit;
+
+import org.nlogo.headless.HeadlessWorkspace;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Fills and drains the discrete event schedule through the extension's own primitives in a headless NetLogo
+ * workspace, so the numbers include argument handling and task dispatch and not just the event queue.  The
+ * extension is loaded from the netlogo.extensions.dir set up by the jmh task in build.gradle.
+ *
+ * "events" is the number of task runs a drain performs, over TURTLES turtles:
+ *   one-shot   one event per run, each for a single turtle, added one at a time with time:schedule-event
+ *   repeating  one event per turtle repeating every tick
+ *   shuffled   one event for all the turtles repeating every tick with time:schedule-repeating-event-shuffled
+ *   anchored   as repeating, but every "month" of a schedule anchored at one tick per month
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ScheduleBenchmark {
+	static final int TURTLES = 1000;
+	static final String SOURCE = "extensions [time] globals [counter] to step set counter counter + 1 end";
+
+	@State(Scope.Benchmark)
+	public static class Model {
+		@Param({"1000", "10000", "100000", "1000000", "10000000"})
+		public int events;
+		@Param({"one-shot", "repeating", "shuffled", "anchored"})
+		public String kind;
+
+		HeadlessWorkspace workspace;
+
+		@Setup(Level.Trial)
+		public void open() throws Exception{
+			workspace = HeadlessWorkspace.newInstance();
+			workspace.initForTesting(0, SOURCE);
+		}
+		@TearDown(Level.Trial)
+		public void close() throws Exception{
+			workspace.dispose();
+		}
+		void reset() throws Exception{
+			workspace.command("clear-all time:clear-schedule reset-ticks create-turtles " + TURTLES);
+		}
+		void fill() throws Exception{
+			if(kind.equals("one-shot")){
+				workspace.command("let i 0 repeat " + events + " [ time:schedule-event turtle (i mod " + TURTLES + ") [ [] -> step ] floor (i / " + TURTLES + ") set i i + 1 ]");
+			}else if(kind.equals("repeating")){
+				workspace.command("ask turtles [ time:schedule-repeating-event self [ [] -> step ] 0 1 ]");
+			}else if(kind.equals("shuffled")){
+				workspace.command("time:schedule-repeating-event-shuffled turtles [ [] -> step ] 0 1");
+			}else{
+				workspace.command("time:anchor-schedule time:create \"2000-01-01\" 1 \"month\"");
+				workspace.command("ask turtles [ time:schedule-repeating-event-with-period self [ [] -> step ] 0 1 \"month\" ]");
+			}
+		}
+		void drain() throws Exception{
+			workspace.command("time:go-until " + (Math.max(events / TURTLES, 1) - 1));
+		}
+	}
+	@State(Scope.Benchmark)
+	public static class Empty {
+		@Setup(Level.Invocation)
+		public void setUp(Model model) throws Exception{
+			model.reset();
+		}
+	}
+	@State(Scope.Benchmark)
+	public static class Filled {
+		@Setup(Level.Invocation)
+		public void setUp(Model model) throws Exception{
+			model.reset();
+			model.fill();
+		}
+	}
+
+	@Benchmark
+	public void insert(Model model, Empty empty) throws Exception{
+		model.fill();
+	}
+	@Benchmark
+	public void drain(Model model, Filled filled) throws Exception{
+		model.drain();
+	}
+}
@@ -0,0 +1,78 @@
+package time.datatypes;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.nlogo.nvm.ExtensionContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import time.TimeEnums.GetTSMethod;
+import time.TimeEnums.PeriodType;
+
+/*
+ * Lookups into a loaded LogoTimeSeries, i.e. time:ts-get, time:ts-get-exact, time:ts-get-interp and
+ * time:ts-get-range.  Exact lookups hit a row, the others fall half way between two rows.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class TimeSeriesBenchmark {
+	static final int QUERIES = 1024; // a power of two, see next()
+
+	@Param({"10000", "100000", "1000000", "10000000"})
+	public int rows;
+
+	LogoTimeSeries series;
+	LogoTime[] rowTimes = new LogoTime[QUERIES];
+	LogoTime[] betweenTimes = new LogoTime[QUERIES];
+	int query = 0;
+
+	@Setup
+	public void setUp() throws Exception{
+		// An absolute path means the ExtensionContext is never consulted
+		series = new LogoTimeSeries(TimeSeriesFiles.generate(rows).getAbsolutePath(), (ExtensionContext)null);
+		Random random = new Random(42);
+		for(int i = 0; i < QUERIES; i++){
+			int row = random.nextInt(rows - 101);
+			rowTimes[i] = new LogoTime(TimeSeriesFiles.START.plusMinutes(row));
+			betweenTimes[i] = new LogoTime(TimeSeriesFiles.START.plusMinutes(row).plusSeconds(30));
+		}
+	}
+	private int next(){
+		return query++ & (QUERIES - 1);
+	}
+
+	@Benchmark
+	public Object getExact() throws Exception{
+		return series.getByTime(rowTimes[next()], "value", GetTSMethod.EXACT);
+	}
+	@Benchmark
+	public Object getNearest() throws Exception{
+		return series.getByTime(betweenTimes[next()], "value", GetTSMethod.NEAREST);
+	}
+	@Benchmark
+	public Object getInterpolated() throws Exception{
+		return series.getByTime(betweenTimes[next()], "value", GetTSMethod.LINEAR_INTERP);
+	}
+	@Benchmark
+	public Object getAllColumns() throws Exception{
+		return series.getByTime(betweenTimes[next()], "ALL_-_COLUMNS", GetTSMethod.NEAREST);
+	}
+	@Benchmark
+	public Object getRange() throws Exception{
+		int i = next();
+		return series.getRangeByTime(rowTimes[i], rowTimes[i].plus(PeriodType.MINUTE, 100.0), "value");
+	}
+}
@@ -0,0 +1,33 @@
+package time.datatypes;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.joda.time.LocalDateTime;
+
+/*
+ * Generates the time series files used by the benchmarks: a row per minute from 2000-01-01 with a numeric and
+ * a string column.  Files are kept in java.io.tmpdir between runs since the large ones take a while to write.
+ */
+class TimeSeriesFiles {
+	static final LocalDateTime START = new LocalDateTime(2000, 1, 1, 0, 0);
+
+	static File generate(int rows) throws IOException{
+		File file = new File(System.getProperty("java.io.tmpdir"), "time-benchmark-" + rows + ".csv");
+		if(file.exists())return file;
+		File partial = new File(file.getPath() + ".part");
+		BufferedWriter writer = new BufferedWriter(new FileWriter(partial));
+		try{
+			writer.write("TIMESTAMP,value,label\n");
+			for(int i = 0; i < rows; i++){
+				writer.write(START.plusMinutes(i).toString("yyyy-MM-dd HH:mm:ss.SSS"));
+				writer.write("," + (i % 997) * 0.5 + ",row" + (i % 13) + "\n");
+			}
+		}finally{
+			writer.close();
+		}
+		if(!partial.renameTo(file))throw new IOException("Could not create " + file);
+		return file;
+	}
+}
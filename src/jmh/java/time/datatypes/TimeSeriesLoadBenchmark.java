@@ -0,0 +1,42 @@
+package time.datatypes;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.nlogo.nvm.ExtensionContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * time:ts-load, reading and parsing a whole file into a LogoTimeSeries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class TimeSeriesLoadBenchmark {
+	@Param({"10000", "100000", "1000000", "10000000"})
+	public int rows;
+
+	File file;
+
+	@Setup
+	public void setUp() throws Exception{
+		file = TimeSeriesFiles.generate(rows);
+	}
+
+	@Benchmark
+	public Object load() throws Exception{
+		return new LogoTimeSeries(file.getAbsolutePath(), (ExtensionContext)null);
+	}
+}
@@ -5,8 +5,6 @@ import time.primitives.DiscreteEventSchedulerPrimitives;
 import time.primitives.TimePrimitives;
 import time.primitives.TimeSeriesPrimitives;
 
-import org.nlogo.api.Context;
-
 public class TimeExtension extends org.nlogo.api.DefaultClassManager {
 
 	public java.util.List<String> additionalJars() {
@@ -15,10 +13,10 @@ public class TimeExtension extends org.nlogo.api.DefaultClassManager {
 		return list;
 	}
 
-	public static final LogoSchedule schedule = new LogoSchedule();
-	public static Context context;
-	public static long nextEvent = 0;
-	public static boolean debug = false;
+	// Each workspace loads its own instance of the extension, so the schedule and the log must not be static or
+	// concurrent runs in one JVM (e.g. parallel BehaviorSpace runs) would share them
+	private final TimeLogger logger = new TimeLogger();
+	private final LogoSchedule schedule = new LogoSchedule(logger);
 
 	public void load(org.nlogo.api.PrimitiveManager primManager) {
 		/**********************
@@ -26,7 +24,7 @@ public class TimeExtension extends org.nlogo.api.DefaultClassManager {
 		/**********************/
 		primManager.addPrimitive("create", new TimePrimitives.NewLogoTime());
 		primManager.addPrimitive("create-with-format", new TimePrimitives.CreateWithFormat());
-		primManager.addPrimitive("anchor-to-ticks", new TimePrimitives.Anchor());
+		primManager.addPrimitive("anchor-to-ticks", new TimePrimitives.Anchor(schedule));
 		primManager.addPrimitive("plus", new TimePrimitives.Plus());
 		primManager.addPrimitive("show", new TimePrimitives.Show());
 		primManager.addPrimitive("get", new TimePrimitives.Get());
@@ -36,22 +34,41 @@ public class TimeExtension extends org.nlogo.api.DefaultClassManager {
 		primManager.addPrimitive("is-equal", new TimePrimitives.IsEqual());
 		primManager.addPrimitive("is-between", new TimePrimitives.IsBetween());
 		primManager.addPrimitive("difference-between", new TimePrimitives.DifferenceBetween());
+		primManager.addPrimitive("set-log-level", new TimePrimitives.SetLogLevel(logger));
+		primManager.addPrimitive("set-log-file", new TimePrimitives.SetLogFile(logger));
 
 		/********************************************
 		/* DISCRETE EVENT SIMULATION PRIMITIVES
 		/*******************************************/
-		primManager.addPrimitive("size-of-schedule", new DiscreteEventSchedulerPrimitives.GetSize());
-		primManager.addPrimitive("schedule-event", new DiscreteEventSchedulerPrimitives.AddEvent());
-		primManager.addPrimitive("schedule-event-shuffled", new DiscreteEventSchedulerPrimitives.AddEventShuffled());
-		primManager.addPrimitive("schedule-repeating-event", new DiscreteEventSchedulerPrimitives.RepeatEvent());
-		primManager.addPrimitive("schedule-repeating-event-shuffled", new DiscreteEventSchedulerPrimitives.RepeatEventShuffled());
-		primManager.addPrimitive("schedule-repeating-event-with-period", new DiscreteEventSchedulerPrimitives.RepeatEventWithPeriod());
-		primManager.addPrimitive("schedule-repeating-event-shuffled-with-period", new DiscreteEventSchedulerPrimitives.RepeatEventShuffledWithPeriod());
-		primManager.addPrimitive("anchor-schedule", new DiscreteEventSchedulerPrimitives.AnchorSchedule());
-		primManager.addPrimitive("go", new DiscreteEventSchedulerPrimitives.Go());
-		primManager.addPrimitive("go-until", new DiscreteEventSchedulerPrimitives.GoUntil());
-		primManager.addPrimitive("clear-schedule", new DiscreteEventSchedulerPrimitives.ClearSchedule());
-		primManager.addPrimitive("show-schedule", new DiscreteEventSchedulerPrimitives.ShowSchedule());
+		primManager.addPrimitive("size-of-schedule", new DiscreteEventSchedulerPrimitives.GetSize(schedule));
+		primManager.addPrimitive("schedule-event", new DiscreteEventSchedulerPrimitives.AddEvent(schedule));
+		primManager.addPrimitive("schedule-events", new DiscreteEventSchedulerPrimitives.AddEvents(schedule));
+		primManager.addPrimitive("schedule-agent-events", new DiscreteEventSchedulerPrimitives.AddAgentEvents(schedule));
+		primManager.addPrimitive("schedule-event-shuffled", new DiscreteEventSchedulerPrimitives.AddEventShuffled(schedule));
+		primManager.addPrimitive("schedule-repeating-event", new DiscreteEventSchedulerPrimitives.RepeatEvent(schedule));
+		primManager.addPrimitive("schedule-repeating-event-shuffled", new DiscreteEventSchedulerPrimitives.RepeatEventShuffled(schedule));
+		primManager.addPrimitive("schedule-repeating-event-with-period", new DiscreteEventSchedulerPrimitives.RepeatEventWithPeriod(schedule));
+		primManager.addPrimitive("schedule-repeating-event-shuffled-with-period", new DiscreteEventSchedulerPrimitives.RepeatEventShuffledWithPeriod(schedule));
+		primManager.addPrimitive("anchor-schedule", new DiscreteEventSchedulerPrimitives.AnchorSchedule(schedule));
+		primManager.addPrimitive("go", new DiscreteEventSchedulerPrimitives.Go(schedule));
+		primManager.addPrimitive("go-until", new DiscreteEventSchedulerPrimitives.GoUntil(schedule));
+		primManager.addPrimitive("clear-schedule", new DiscreteEventSchedulerPrimitives.ClearSchedule(schedule));
+		primManager.addPrimitive("show-schedule", new DiscreteEventSchedulerPrimitives.ShowSchedule(schedule));
+		primManager.addPrimitive("set-scheduler-mode", new DiscreteEventSchedulerPrimitives.SetSchedulerMode(schedule));
+		primManager.addPrimitive("set-coalescing", new DiscreteEventSchedulerPrimitives.SetCoalescing(schedule));
+		primManager.addPrimitive("last-scheduled-event", new DiscreteEventSchedulerPrimitives.LastScheduledEvent(schedule));
+		primManager.addPrimitive("cancel-event", new DiscreteEventSchedulerPrimitives.CancelEvent(schedule));
+		primManager.addPrimitive("unschedule-agent", new DiscreteEventSchedulerPrimitives.UnscheduleAgent(schedule));
+		primManager.addPrimitive("reschedule-event", new DiscreteEventSchedulerPrimitives.RescheduleEvent(schedule));
+		primManager.addPrimitive("schedule-stats", new DiscreteEventSchedulerPrimitives.GetScheduleStats(schedule));
+		primManager.addPrimitive("reset-schedule-stats", new DiscreteEventSchedulerPrimitives.ResetScheduleStats(schedule));
+		primManager.addPrimitive("start-trace", new DiscreteEventSchedulerPrimitives.StartTrace(schedule));
+		primManager.addPrimitive("stop-trace", new DiscreteEventSchedulerPrimitives.StopTrace(schedule));
+		primManager.addPrimitive("save-schedule", new DiscreteEventSchedulerPrimitives.SaveSchedule(schedule));
+		primManager.addPrimitive("load-schedule", new DiscreteEventSchedulerPrimitives.LoadSchedule(schedule));
+		primManager.addPrimitive("save-schedule-template", new DiscreteEventSchedulerPrimitives.SaveScheduleTemplate(schedule));
+		primManager.addPrimitive("instantiate-schedule-template", new DiscreteEventSchedulerPrimitives.InstantiateScheduleTemplate(schedule));
+		primManager.addPrimitive("schedule-template-names", new DiscreteEventSchedulerPrimitives.ScheduleTemplateNames(schedule));
 
 		/**********************
 		/* TIME SERIES PRIMITIVES
@@ -67,7 +84,14 @@ public class TimeExtension extends org.nlogo.api.DefaultClassManager {
 		primManager.addPrimitive("ts-add-row", new TimeSeriesPrimitives.TimeSeriesAddRow());
 	}
 	public void clearAll() {
-		this.schedule.clear();
+		schedule.clear();
+	}
+	public void unload(org.nlogo.api.ExtensionManager em) throws org.nlogo.api.ExtensionException {
+		try{
+			schedule.stopTrace();
+		}finally{
+			logger.close();
+		}
 	}
 
 
@@ -0,0 +1,270 @@
+package time;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.nlogo.api.ExtensionException;
+
+/*
+ * TimeLogger is the extension's debug and trace log.  The thread running the model only puts messages into a fixed
+ * size ring buffer, a background daemon thread writes them to the log file, so logging never waits on the disk.  If
+ * the model outruns the writer the oldest messages are overwritten and the number lost is noted in the file.
+ * Callers check the level before building a message so that nothing is allocated while logging is off, e.g.
+ *
+ *     if(log.isDebug())log.debug("scheduling event: "+event.dump(false, false, false));
+ *
+ * Each instance of the extension (so each workspace) has its own log, configured from NetLogo with time:set-log-level
+ * and time:set-log-file.  The buffer is only allocated and the writer thread only started once something is logged,
+ * and close, called when the extension is unloaded, stops the writer and writes out what is left.  Messages only go to
+ * the log file, not to NetLogo's output area.
+ */
+public class TimeLogger {
+	public enum Level {
+		OFF,ERROR,WARN,INFO,DEBUG,TRACE;
+	}
+	static final int CAPACITY = 1 << 16; // must be a power of two
+	static final long WRITE_INTERVAL_MS = 200;
+	static final String DEFAULT_FILE = "time-extension.log";
+
+	private volatile Level level = Level.OFF;
+	// The ring buffer, guarded by bufferLock and allocated on the first message.  The oldest message is at head.
+	private final Object bufferLock = new Object();
+	private String[] messages = null;
+	private Level[] levels = null;
+	private String[] threads = null;
+	private long[] times = null;
+	private int head = 0;
+	private int count = 0;
+	private long dropped = 0;
+	private Thread writerThread = null;
+	private Thread shutdownHook = null;
+	private boolean closed = false;
+	// The log file, guarded by fileLock.  It is opened on the first write and kept open until the file is changed.
+	private final Object fileLock = new Object();
+	private File file = new File(DEFAULT_FILE);
+	private Writer out = null;
+	private boolean failed = false;
+	private final SimpleDateFormat timestampFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+
+	public Level getLevel(){
+		return level;
+	}
+	public boolean isEnabled(Level messageLevel){
+		return messageLevel != Level.OFF && messageLevel.ordinal() <= level.ordinal();
+	}
+	public boolean isDebug(){
+		return level.ordinal() >= Level.DEBUG.ordinal();
+	}
+	public boolean isTrace(){
+		return level == Level.TRACE;
+	}
+	public void error(String msg){
+		log(Level.ERROR, msg);
+	}
+	public void warn(String msg){
+		log(Level.WARN, msg);
+	}
+	public void info(String msg){
+		log(Level.INFO, msg);
+	}
+	public void debug(String msg){
+		log(Level.DEBUG, msg);
+	}
+	public void trace(String msg){
+		log(Level.TRACE, msg);
+	}
+	public void log(Level messageLevel, String msg){
+		if(!isEnabled(messageLevel))return;
+		long now = System.currentTimeMillis();
+		String thread = Thread.currentThread().getName();
+		synchronized(bufferLock){
+			if(closed)return;
+			if(messages == null){
+				messages = new String[CAPACITY];
+				levels = new Level[CAPACITY];
+				threads = new String[CAPACITY];
+				times = new long[CAPACITY];
+			}
+			int slot = (head + count) & (CAPACITY - 1);
+			messages[slot] = msg;
+			levels[slot] = messageLevel;
+			threads[slot] = thread;
+			times[slot] = now;
+			if(count == CAPACITY){
+				// Overwrote the oldest message
+				head = (head + 1) & (CAPACITY - 1);
+				dropped++;
+			}else{
+				count++;
+			}
+			if(writerThread == null){
+				startWriter();
+			}else if(count == CAPACITY / 2){
+				// Don't wait for the next interval, the buffer is filling up
+				bufferLock.notify();
+			}
+		}
+	}
+	public static Level stringToLevel(String sLevel) throws ExtensionException{
+		try{
+			return Level.valueOf(sLevel.trim().toUpperCase());
+		}catch(IllegalArgumentException e){
+			throw new ExtensionException("illegal log level: "+sLevel+", expecting one of \"off\", \"error\", \"warn\", \"info\", \"debug\" or \"trace\"");
+		}
+	}
+	public void setLevel(Level newLevel){
+		level = newLevel;
+		if(newLevel == Level.OFF)flush();
+	}
+	/*
+	 * Directs the log to a different file, the messages already logged are written to the old one first.
+	 */
+	public void setFile(File newFile){
+		flush();
+		synchronized(fileLock){
+			closeFile();
+			file = newFile;
+			failed = false;
+		}
+	}
+	public File getFile(){
+		synchronized(fileLock){
+			return file;
+		}
+	}
+	/*
+	 * Writes out everything logged so far, on the calling thread.
+	 */
+	public void flush(){
+		synchronized(fileLock){
+			String[] batchMessages;
+			Level[] batchLevels;
+			String[] batchThreads;
+			long[] batchTimes;
+			long batchDropped;
+			synchronized(bufferLock){
+				if(count == 0 && dropped == 0)return;
+				batchMessages = new String[count];
+				batchLevels = new Level[count];
+				batchThreads = new String[count];
+				batchTimes = new long[count];
+				for(int i = 0; i < count; i++){
+					int slot = (head + i) & (CAPACITY - 1);
+					batchMessages[i] = messages[slot];
+					batchLevels[i] = levels[slot];
+					batchThreads[i] = threads[slot];
+					batchTimes[i] = times[slot];
+					messages[slot] = null;
+					threads[slot] = null;
+				}
+				batchDropped = dropped;
+				head = 0;
+				count = 0;
+				dropped = 0;
+			}
+			if(failed)return;
+			try{
+				if(out == null)out = new BufferedWriter(new FileWriter(file, true));
+				if(batchDropped > 0)out.write(timestampFormat.format(new Date(batchTimes.length > 0 ? batchTimes[0] : System.currentTimeMillis()))+" WARN  [time-extension] "+batchDropped+" messages were dropped, the log could not keep up\n");
+				for(int i = 0; i < batchMessages.length; i++){
+					out.write(timestampFormat.format(new Date(batchTimes[i])));
+					out.write(' ');
+					out.write(batchLevels[i].toString());
+					if(batchLevels[i].toString().length() < 5)out.write(' ');
+					out.write(" [");
+					out.write(batchThreads[i]);
+					out.write("] ");
+					out.write(batchMessages[i]);
+					out.write('\n');
+				}
+				out.flush();
+			}catch(IOException e){
+				// Don't take the model down over its log, say so once and stop writing until the file is changed
+				failed = true;
+				System.err.println("time extension: could not write to the log file "+file.getAbsolutePath()+": "+e.getMessage());
+				closeFile();
+			}
+		}
+	}
+	private void closeFile(){
+		if(out == null)return;
+		try{
+			out.close();
+		}catch(IOException e){
+			// nothing more can be done with it
+		}
+		out = null;
+	}
+	private void startWriter(){
+		writerThread = new Thread(new Runnable(){
+			public void run(){
+				while(true){
+					synchronized(bufferLock){
+						if(closed)return;
+						if(count < CAPACITY / 2){
+							try{
+								bufferLock.wait(WRITE_INTERVAL_MS);
+							}catch(InterruptedException e){
+								return;
+							}
+						}
+					}
+					flush();
+				}
+			}
+		}, "time-extension-logger");
+		writerThread.setDaemon(true);
+		writerThread.start();
+		shutdownHook = new Thread(new Runnable(){
+			public void run(){
+				flush();
+			}
+		}, "time-extension-logger-shutdown");
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+	}
+	/*
+	 * Stops the writer thread, writes out everything logged so far and closes the file.  Nothing is logged afterwards.
+	 */
+	public void close(){
+		Thread writer;
+		Thread hook;
+		synchronized(bufferLock){
+			closed = true;
+			level = Level.OFF;
+			writer = writerThread;
+			hook = shutdownHook;
+			writerThread = null;
+			shutdownHook = null;
+			bufferLock.notify();
+		}
+		if(writer != null){
+			try{
+				writer.join();
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+		}
+		if(hook != null){
+			try{
+				Runtime.getRuntime().removeShutdownHook(hook);
+			}catch(IllegalStateException e){
+				// the JVM is already shutting down and the hook is running or about to
+			}
+		}
+		flush();
+		synchronized(fileLock){
+			closeFile();
+		}
+		synchronized(bufferLock){
+			messages = null;
+			levels = null;
+			threads = null;
+			times = null;
+		}
+	}
+}
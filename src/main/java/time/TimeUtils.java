@@ -1,25 +1,17 @@
 package time;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
-import java.util.logging.FileHandler;
-import java.util.logging.Logger;
-import java.util.logging.SimpleFormatter;
+import java.io.File;
+import java.net.MalformedURLException;
 
 import org.nlogo.api.Argument;
-import org.nlogo.api.Context;
 import org.nlogo.api.Dump;
 import org.nlogo.api.ExtensionException;
 import org.nlogo.api.LogoException;
-import org.nlogo.api.OutputDestination;
-import org.nlogo.api.OutputDestinationJ;
 import org.nlogo.core.LogoList;
 import org.nlogo.nvm.ExtensionContext;
-import org.nlogo.window.OutputArea;
 
 import time.TimeEnums.PeriodType;
+import time.datatypes.LogoEvent;
 import time.datatypes.LogoSchedule;
 import time.datatypes.LogoTime;
 import time.datatypes.LogoTimeSeries;
@@ -122,31 +114,32 @@ public class TimeUtils {
 		}
 		return ts;
 	}
+	public static LogoEvent getEventFromArgument(Argument args[], Integer argIndex) throws ExtensionException, LogoException {
+		Object obj = args[argIndex].get();
+		if (!(obj instanceof LogoEvent)) {
+			throw new ExtensionException("time: was expecting an event as argument "+(argIndex+1)+", found this instead: " + Dump.logoObject(obj));
+		}
+		return (LogoEvent) obj;
+	}
 	public static Integer roundDouble(Double d){
 		return ((Long)Math.round(d)).intValue();
 	}
 	public static Double intToDouble(int i){
 		return (new Integer(i)).doubleValue();
 	}
-	public static void printToLogfile(String msg){
-		Logger logger = Logger.getLogger("MyLog");  
-		FileHandler fh;  
-
-		try {  
-			// This block configure the logger with handler and formatter  
-			fh = new FileHandler("logfile.txt",true);
-			logger.addHandler(fh);  
-			//logger.setLevel(Level.ALL);  
-			SimpleFormatter formatter = new SimpleFormatter();  
-			fh.setFormatter(formatter);  
-			// the following statement is used to log any messages  
-			logger.info(msg);
-			fh.close();
-		} catch (SecurityException e) {  
-			e.printStackTrace();  
-		} catch (IOException e) {  
-			e.printStackTrace();  
-		}  
+	/*
+	 * Resolves a file name given to a primitive, relative names are relative to the model's directory.
+	 */
+	public static File resolveFile(String filename, ExtensionContext context) throws ExtensionException{
+		if(filename.length() == 0)throw new ExtensionException("time: was expecting a file name, found an empty string instead");
+		if(filename.charAt(0)=='/' || filename.charAt(0)=='\\' || (filename.length() > 1 && filename.charAt(1)==':') || context.workspace().getModelDir()==null){
+			return new File(filename);
+		}
+		try {
+			return new File(context.attachCurrentDirectory(filename));
+		} catch (MalformedURLException e) {
+			throw new ExtensionException("Malformed filename URL: "+filename);
+		}
 	}
 	// Convenience method, to extract a schedule object from an Argument.
 	public static LogoSchedule getScheduleFromArguments(Argument args[], int index) throws ExtensionException, LogoException {
@@ -156,19 +149,5 @@ public class TimeUtils {
 		}
 		return (LogoSchedule) obj;
 	}
-	public static void printToConsole(Context context, String msg) throws ExtensionException{
-		try {
-			ExtensionContext extcontext = (ExtensionContext) context;
-			extcontext.workspace().outputObject(msg,null, true, true,OutputDestinationJ.OUTPUT_AREA());
-		    Files.write(Paths.get("/Users/critter/Dropbox/netlogo/time/debugging/log.txt"), (msg+"\n").getBytes(), StandardOpenOption.APPEND);
-		} catch (LogoException e) {
-			throw new ExtensionException(e);
-		} catch (IOException e) {
-			throw new ExtensionException(e);
-		}
-	}
-	public static void setContext(Context context) {
-		TimeExtension.context = context;
-	}
 
 }
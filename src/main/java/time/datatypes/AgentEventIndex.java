@@ -0,0 +1,101 @@
+package time.datatypes;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.nlogo.agent.Agent;
+
+/*
+ * AgentEventIndex maps each agent to the events scheduled for it alone (single agent events and the events they were
+ * merged into, see time:set-coalescing), so the events of an agent can be found without searching the queue.  It is
+ * used by time:unschedule-agent and to purge the events of agents that have died.
+ *
+ * Entries aren't removed when an event is dispatched, which would cost a lookup per event.  Instead an entry whose
+ * event is no longer pending is skipped by lookups and dropped by the next sweep.  Sweeps are due once as many
+ * events have been indexed as there are events in the queue, so their cost is spread over the events added.
+ */
+class AgentEventIndex {
+	static final int MIN_SWEEP_INTERVAL = 4096;
+
+	// Each agent maps to a LogoEvent, or to an ArrayList<LogoEvent> once it has more than one
+	private final IdentityHashMap<Agent,Object> events = new IdentityHashMap<Agent,Object>();
+	private int addedSinceSweep = 0;
+
+	static boolean isPending(LogoEvent event){
+		return event.queueIndex >= 0 || event.cohortIndex >= 0;
+	}
+	void add(Agent agent, LogoEvent event){
+		addedSinceSweep++;
+		Object existing = events.get(agent);
+		if(existing == null){
+			events.put(agent, event);
+		}else if(existing instanceof LogoEvent){
+			if(existing == event)return;
+			ArrayList<LogoEvent> list = new ArrayList<LogoEvent>(4);
+			list.add((LogoEvent)existing);
+			list.add(event);
+			events.put(agent, list);
+		}else{
+			@SuppressWarnings("unchecked")
+			ArrayList<LogoEvent> list = (ArrayList<LogoEvent>)existing;
+			// Lists are short, and an event is only indexed again when it is put back after being dispatched
+			if(!list.contains(event))list.add(event);
+		}
+	}
+	/*
+	 * Takes the agent out of the index and returns its pending events.
+	 */
+	ArrayList<LogoEvent> remove(Agent agent){
+		ArrayList<LogoEvent> pending = new ArrayList<LogoEvent>();
+		Object existing = events.remove(agent);
+		if(existing instanceof LogoEvent){
+			if(isPending((LogoEvent)existing))pending.add((LogoEvent)existing);
+		}else if(existing != null){
+			@SuppressWarnings("unchecked")
+			ArrayList<LogoEvent> list = (ArrayList<LogoEvent>)existing;
+			for(LogoEvent event : list){
+				if(isPending(event))pending.add(event);
+			}
+		}
+		return pending;
+	}
+	boolean isSweepDue(int queueSize){
+		return addedSinceSweep > Math.max(MIN_SWEEP_INTERVAL, queueSize);
+	}
+	/*
+	 * Drops the entries of events that are no longer pending and takes the agents that have died out of the index,
+	 * returning their pending events.
+	 */
+	ArrayList<LogoEvent> sweep(){
+		addedSinceSweep = 0;
+		ArrayList<LogoEvent> orphaned = new ArrayList<LogoEvent>();
+		for(Iterator<Map.Entry<Agent,Object>> iter = events.entrySet().iterator(); iter.hasNext();){
+			Map.Entry<Agent,Object> entry = iter.next();
+			boolean dead = entry.getKey().id == -1;
+			Object value = entry.getValue();
+			if(value instanceof LogoEvent){
+				LogoEvent event = (LogoEvent)value;
+				if(dead && isPending(event))orphaned.add(event);
+				if(dead || !isPending(event))iter.remove();
+			}else{
+				@SuppressWarnings("unchecked")
+				ArrayList<LogoEvent> list = (ArrayList<LogoEvent>)value;
+				for(Iterator<LogoEvent> events = list.iterator(); events.hasNext();){
+					LogoEvent event = events.next();
+					if(!isPending(event)){
+						events.remove();
+					}else if(dead){
+						orphaned.add(event);
+					}
+				}
+				if(dead || list.isEmpty())iter.remove();
+			}
+		}
+		return orphaned;
+	}
+	void clear(){
+		events.clear();
+		addedSinceSweep = 0;
+	}
+}
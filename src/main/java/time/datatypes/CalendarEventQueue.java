@@ -0,0 +1,335 @@
+package time.datatypes;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * CalendarEventQueue is a self-resizing calendar queue (R. Brown, 1988).  Ticks are hashed into "days" of a
+ * fixed width and the days are laid out round-robin over a power-of-two number of buckets, each bucket holding
+ * its events sorted by tick and then by id.  Insert and remove-min are O(1) amortized as long as the bucket width
+ * tracks the spacing of the pending events, which is re-estimated every time the number of buckets is doubled
+ * or halved.  Events come out in exactly the order defined by the LogoEventComparator.
+ */
+public class CalendarEventQueue implements EventQueue {
+	private static final int MIN_BUCKETS = 16;
+	private static final int MIN_DEEP_BUCKET = 64;
+	private static final LogoEventComparator ORDER = new LogoEventComparator();
+
+	private Bucket[] buckets;
+	private int mask;
+	private double width = 1.0;
+	private long currentDay = 0; // no pending event falls on a day before this one
+	private Bucket minBucket = null; // bucket holding the head of the queue, null if unknown
+	private int size = 0;
+	private int deepBucket = MIN_DEEP_BUCKET; // bucket length that triggers a re-estimate of the width
+
+	public CalendarEventQueue(){
+		allocate(MIN_BUCKETS);
+	}
+	public int size(){
+		return size;
+	}
+	public boolean isEmpty(){
+		return size == 0;
+	}
+	public void add(LogoEvent event){
+		long day = dayOf(event.tick);
+		if(size == 0 || day < currentDay)currentDay = day;
+		int index = (int)(day & mask);
+		Bucket bucket = buckets[index];
+		bucket.insert(event);
+		event.queueIndex = index;
+		size++;
+		if(minBucket != null && minBucket != bucket && isBefore(event, minBucket.first()))minBucket = bucket;
+		if(size > 2 * buckets.length){
+			resize(buckets.length * 2);
+		}else if(bucket.size > deepBucket){
+			// The pending events are bunched up relative to the current width, spread them out again
+			resize(buckets.length);
+		}
+	}
+	public void addAll(ArrayList<LogoEvent> batch){
+		if(batch.size() < size){
+			for(LogoEvent event : batch){
+				add(event);
+			}
+			return;
+		}
+		// Rebuild the calendar around the combined events in one pass
+		LogoEvent[] events = Arrays.copyOf(collect(), size + batch.size());
+		for(int i = 0; i < batch.size(); i++){
+			events[size + i] = batch.get(i);
+		}
+		int bucketCount = MIN_BUCKETS;
+		while(2 * bucketCount < events.length){
+			bucketCount *= 2;
+		}
+		rebuild(events, bucketCount);
+	}
+	public LogoEvent peek(){
+		if(size == 0)return null;
+		return locateMin().first();
+	}
+	public LogoEvent poll(){
+		if(size == 0)return null;
+		Bucket bucket = locateMin();
+		LogoEvent event = bucket.removeFirst();
+		event.queueIndex = -1;
+		size--;
+		if(bucket.size == 0 || dayOf(bucket.firstTick()) != currentDay)minBucket = null;
+		if(size < buckets.length / 2 && buckets.length > MIN_BUCKETS)resize(buckets.length / 2);
+		return event;
+	}
+	public void pollCohort(ArrayList<LogoEvent> cohort){
+		if(size == 0)return;
+		// Events sharing a tick always share a day, so the whole cohort is a run at the front of one bucket
+		Bucket bucket = locateMin();
+		double tick = bucket.firstTick();
+		do{
+			LogoEvent event = bucket.removeFirst();
+			event.queueIndex = -1;
+			cohort.add(event);
+			size--;
+		}while(bucket.size > 0 && bucket.firstTick() == tick);
+		if(bucket.size == 0 || dayOf(bucket.firstTick()) != currentDay)minBucket = null;
+		if(size < buckets.length / 2 && buckets.length > MIN_BUCKETS)resize(buckets.length / 2);
+	}
+	public boolean remove(LogoEvent event){
+		int index = event.queueIndex;
+		if(index < 0 || index >= buckets.length)return false;
+		Bucket bucket = buckets[index];
+		int pos = bucket.indexOf(event);
+		if(pos < 0)return false;
+		bucket.removeAt(pos);
+		event.queueIndex = -1;
+		size--;
+		// The head of the queue only changes if it was the event removed
+		if(bucket == minBucket && pos == 0)minBucket = null;
+		if(size < buckets.length / 2 && buckets.length > MIN_BUCKETS)resize(buckets.length / 2);
+		return true;
+	}
+	public void clear(){
+		for(Bucket bucket : buckets){
+			for(int i = 0; i < bucket.size; i++){
+				bucket.items[bucket.head + i].queueIndex = -1;
+			}
+		}
+		allocate(MIN_BUCKETS);
+		width = 1.0;
+		currentDay = 0;
+		size = 0;
+		deepBucket = MIN_DEEP_BUCKET;
+	}
+	public LogoEvent[] toSortedArray(){
+		LogoEvent[] copy = collect();
+		Arrays.sort(copy, new LogoEventComparator());
+		return copy;
+	}
+	/*
+	 * Scan one "year" of buckets starting at the current day for an event that falls on the day being examined,
+	 * the first such event is the minimum.  If a whole year goes by without one (the pending events are sparse
+	 * relative to the width) fall back to a direct search of the bucket heads.
+	 */
+	private Bucket locateMin(){
+		if(minBucket != null)return minBucket;
+		for(int i = 0; i < buckets.length; i++){
+			long day = currentDay + i;
+			Bucket bucket = buckets[(int)(day & mask)];
+			if(bucket.size > 0 && dayOf(bucket.firstTick()) == day){
+				currentDay = day;
+				minBucket = bucket;
+				return bucket;
+			}
+		}
+		Bucket best = null;
+		for(Bucket bucket : buckets){
+			if(bucket.size > 0 && (best == null || isBefore(bucket.first(), best.first())))best = bucket;
+		}
+		currentDay = dayOf(best.first().tick);
+		minBucket = best;
+		return best;
+	}
+	private void resize(int bucketCount){
+		rebuild(collect(), bucketCount);
+	}
+	private void rebuild(LogoEvent[] events, int bucketCount){
+		double minTick = Double.POSITIVE_INFINITY, maxTick = Double.NEGATIVE_INFINITY;
+		for(LogoEvent event : events){
+			if(event.tick < minTick)minTick = event.tick;
+			if(event.tick > maxTick)maxTick = event.tick;
+		}
+		// Aim for a few events per day on average
+		double newWidth = events.length > 1 ? 3.0 * (maxTick - minTick) / events.length : width;
+		if(!(newWidth > 0.0) || Double.isInfinite(newWidth))newWidth = 1.0;
+		width = newWidth;
+		allocate(bucketCount);
+		size = 0;
+		// Drop the events into their buckets as they come and sort each (short) bucket afterwards
+		for(LogoEvent event : events){
+			long day = dayOf(event.tick);
+			if(size == 0 || day < currentDay)currentDay = day;
+			int index = (int)(day & mask);
+			buckets[index].append(event);
+			event.queueIndex = index;
+			size++;
+		}
+		int deepest = 0;
+		for(Bucket bucket : buckets){
+			bucket.sort();
+			if(bucket.size > deepest)deepest = bucket.size;
+		}
+		deepBucket = Math.max(MIN_DEEP_BUCKET, 2 * deepest);
+	}
+	private void allocate(int bucketCount){
+		buckets = new Bucket[bucketCount];
+		for(int i = 0; i < bucketCount; i++){
+			buckets[i] = new Bucket();
+		}
+		mask = bucketCount - 1;
+		minBucket = null;
+	}
+	private LogoEvent[] collect(){
+		LogoEvent[] events = new LogoEvent[size];
+		int n = 0;
+		for(Bucket bucket : buckets){
+			System.arraycopy(bucket.items, bucket.head, events, n, bucket.size);
+			n += bucket.size;
+		}
+		return events;
+	}
+	private long dayOf(double tick){
+		return (long)Math.floor(tick / width);
+	}
+	private static boolean isBefore(LogoEvent a, LogoEvent b){
+		return isBefore(a.tick, a.id, b.tick, b.id);
+	}
+	private static boolean isBefore(double tickA, long idA, double tickB, long idB){
+		return tickA < tickB || (tickA == tickB && idA < idB);
+	}
+
+	/*
+	 * A bucket is a sorted run of events stored in items[head, head+size), removing the first event just
+	 * advances head.  The sort keys are mirrored into primitive arrays so searching a bucket never dereferences
+	 * the events.
+	 */
+	private static class Bucket {
+		LogoEvent[] items = new LogoEvent[4];
+		double[] ticks = new double[4];
+		long[] ids = new long[4];
+		int head = 0;
+		int size = 0;
+
+		LogoEvent first(){
+			return items[head];
+		}
+		double firstTick(){
+			return ticks[head];
+		}
+		LogoEvent removeFirst(){
+			LogoEvent event = items[head];
+			items[head] = null;
+			size--;
+			head = (size == 0) ? 0 : head + 1;
+			return event;
+		}
+		/*
+		 * Adds an event at the end of the bucket without keeping it sorted, see sort().
+		 */
+		void append(LogoEvent event){
+			makeRoom();
+			int end = head + size;
+			items[end] = event;
+			ticks[end] = event.tick;
+			ids[end] = event.id;
+			size++;
+		}
+		/*
+		 * Puts the events back in order after they have been appended.
+		 */
+		void sort(){
+			int end = head + size;
+			boolean sorted = true;
+			for(int i = head + 1; i < end && sorted; i++){
+				sorted = isBefore(ticks[i - 1], ids[i - 1], ticks[i], ids[i]);
+			}
+			if(sorted)return;
+			Arrays.sort(items, head, end, ORDER);
+			for(int i = head; i < end; i++){
+				ticks[i] = items[i].tick;
+				ids[i] = items[i].id;
+			}
+		}
+		private void makeRoom(){
+			if(head + size < items.length)return;
+			if(head > 0){
+				System.arraycopy(items, head, items, 0, size);
+				System.arraycopy(ticks, head, ticks, 0, size);
+				System.arraycopy(ids, head, ids, 0, size);
+				Arrays.fill(items, size, head + size, null);
+				head = 0;
+			}else{
+				items = Arrays.copyOf(items, items.length * 2);
+				ticks = Arrays.copyOf(ticks, ticks.length * 2);
+				ids = Arrays.copyOf(ids, ids.length * 2);
+			}
+		}
+		/*
+		 * Returns the position of the event relative to head, or -1 if it is not in the bucket.
+		 */
+		int indexOf(LogoEvent event){
+			double tick = event.tick;
+			long id = event.id;
+			int low = head, high = head + size;
+			while(low < high){
+				int mid = (low + high) >>> 1;
+				if(isBefore(ticks[mid], ids[mid], tick, id)){
+					low = mid + 1;
+				}else{
+					high = mid;
+				}
+			}
+			return (low < head + size && items[low] == event) ? low - head : -1;
+		}
+		void removeAt(int pos){
+			if(pos == 0){
+				removeFirst();
+				return;
+			}
+			int index = head + pos;
+			int end = head + size;
+			System.arraycopy(items, index + 1, items, index, end - index - 1);
+			System.arraycopy(ticks, index + 1, ticks, index, end - index - 1);
+			System.arraycopy(ids, index + 1, ids, index, end - index - 1);
+			items[end - 1] = null;
+			size--;
+		}
+		void insert(LogoEvent event){
+			makeRoom();
+			// Binary search for the insertion point, most events land at the end of their bucket
+			double tick = event.tick;
+			long id = event.id;
+			int end = head + size;
+			int pos;
+			if(size == 0 || !isBefore(tick, id, ticks[end - 1], ids[end - 1])){
+				pos = end;
+			}else{
+				int low = head, high = end - 1;
+				while(low < high){
+					int mid = (low + high) >>> 1;
+					if(isBefore(tick, id, ticks[mid], ids[mid])){
+						high = mid;
+					}else{
+						low = mid + 1;
+					}
+				}
+				pos = low;
+				System.arraycopy(items, pos, items, pos + 1, end - pos);
+				System.arraycopy(ticks, pos, ticks, pos + 1, end - pos);
+				System.arraycopy(ids, pos, ids, pos + 1, end - pos);
+			}
+			items[pos] = event;
+			ticks[pos] = tick;
+			ids[pos] = id;
+			size++;
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package time.datatypes;
+import java.util.ArrayList;
+
+/*
+ * EventQueue is the backend of a LogoSchedule, the pending LogoEvents must come out of poll() in the order
+ * defined by the LogoEventComparator (by tick and then by id) no matter how the implementation stores them.
+ * Implementations keep LogoEvent.queueIndex non-negative while an event is queued and reset it to -1 when
+ * the event leaves the queue.
+ */
+public interface EventQueue {
+	public void add(LogoEvent event);
+	/*
+	 * Adds a batch of events, implementations may load a large batch faster than adding the events one at a time.
+	 */
+	public void addAll(ArrayList<LogoEvent> batch);
+	public LogoEvent peek();
+	public LogoEvent poll();
+	/*
+	 * Removes the event at the head of the queue along with every other event sharing its tick and appends them
+	 * to cohort in dispatch order.
+	 */
+	public void pollCohort(ArrayList<LogoEvent> cohort);
+	/*
+	 * Removes a queued event from wherever it is in the queue, returns false if the event is not in this queue.
+	 */
+	public boolean remove(LogoEvent event);
+	public int size();
+	public boolean isEmpty();
+	public void clear();
+	public LogoEvent[] toSortedArray();
+}
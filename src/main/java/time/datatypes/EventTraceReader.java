@@ -0,0 +1,207 @@
+package time.datatypes;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+/*
+ * EventTraceReader reads the event traces written by time:start-trace (see EventTraceWriter) and holds the format
+ * they share.  It doesn't need NetLogo, so it can be run on its own from the command line:
+ *
+ *     java -cp time.jar time.datatypes.EventTraceReader summary run.trace
+ *     java -cp time.jar time.datatypes.EventTraceReader compare run1.trace run2.trace
+ *
+ * summary prints the size of the trace and the time spent in each task, compare reports the first point at which
+ * two traces dispatched something different (timings are ignored) and exits with status 1 if there is one.
+ *
+ * A trace is a header (MAGIC, VERSION, the wall clock time at which the trace started in epoch millis) followed by
+ * big-endian records, each starting with a type byte:
+ *   TASK  int task-id, short length, UTF-8 bytes of the task's name; comes before the first RUN of the task
+ *   RUN   long event-id, double tick, byte agent-kind, long agent-id, int task-id, long nanoseconds the run took
+ * There is one RUN record per agent (or the observer) that an event's task was run for, in dispatch order.
+ */
+public class EventTraceReader {
+	static final byte[] MAGIC = {'N','L','T','I','M','E','T','R'};
+	static final int VERSION = 1;
+	static final byte TASK = 1;
+	static final byte RUN = 2;
+	static final int RUN_LENGTH = 1 + 8 + 8 + 1 + 8 + 4 + 8;
+	static final int MAX_NAME_LENGTH = 1024;
+	static final byte OBSERVER = 0;
+	static final byte TURTLE = 1;
+	static final byte PATCH = 2;
+	static final byte LINK = 3;
+	static final String[] KIND_NAMES = {"observer", "turtle", "patch", "link"};
+
+	private final DataInputStream in;
+	private final HashMap<Integer,String> taskNames = new HashMap<Integer,String>();
+	private long startMillis;
+	// The current RUN record
+	long eventId;
+	double tick;
+	byte agentKind;
+	long agentId;
+	int taskId;
+	long nanos;
+
+	public EventTraceReader(String filename) throws IOException{
+		in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename), 1 << 16));
+		byte[] magic = new byte[MAGIC.length];
+		in.readFully(magic);
+		for(int i = 0; i < MAGIC.length; i++){
+			if(magic[i] != MAGIC[i]){
+				in.close();
+				throw new IOException(filename+" is not an event trace written by the time extension");
+			}
+		}
+		int version = in.readInt();
+		if(version != VERSION){
+			in.close();
+			throw new IOException(filename+" is a version "+version+" event trace, expecting version "+VERSION);
+		}
+		startMillis = in.readLong();
+	}
+	/*
+	 * Advances to the next RUN record, returns false at the end of the trace.
+	 */
+	public boolean next() throws IOException{
+		while(true){
+			int type = in.read();
+			if(type < 0)return false;
+			try{
+				if(type == TASK){
+					int id = in.readInt();
+					byte[] name = new byte[in.readShort()];
+					in.readFully(name);
+					taskNames.put(id, new String(name, "UTF-8"));
+				}else if(type == RUN){
+					eventId = in.readLong();
+					tick = in.readDouble();
+					agentKind = in.readByte();
+					agentId = in.readLong();
+					taskId = in.readInt();
+					nanos = in.readLong();
+					return true;
+				}else{
+					throw new IOException("corrupt event trace, unknown record type "+type);
+				}
+			}catch(EOFException e){
+				// The run was cut short part way through a record, treat what came before as the whole trace
+				return false;
+			}
+		}
+	}
+	public long getStartMillis(){
+		return startMillis;
+	}
+	public String taskName(){
+		String name = taskNames.get(taskId);
+		return name == null ? "task "+taskId : name;
+	}
+	public String agentName(){
+		if(agentKind == OBSERVER)return KIND_NAMES[OBSERVER];
+		return (agentKind >= 0 && agentKind < KIND_NAMES.length ? KIND_NAMES[agentKind] : "agent") + " " + agentId;
+	}
+	public void close() throws IOException{
+		in.close();
+	}
+	String describe(){
+		return "event "+eventId+" at tick "+tick+" ran "+taskName()+" for "+agentName();
+	}
+
+	public static void main(String[] args) throws IOException{
+		if(args.length == 2 && args[0].equals("summary")){
+			summarize(args[1], System.out);
+		}else if(args.length == 3 && args[0].equals("compare")){
+			if(!compare(args[1], args[2], System.out))System.exit(1);
+		}else{
+			System.err.println("usage: EventTraceReader summary <trace>");
+			System.err.println("       EventTraceReader compare <trace> <trace>");
+			System.exit(2);
+		}
+	}
+	public static void summarize(String filename, PrintStream out) throws IOException{
+		EventTraceReader reader = new EventTraceReader(filename);
+		LinkedHashMap<String,long[]> tasks = new LinkedHashMap<String,long[]>(); // count, total nanos, max nanos
+		long runs = 0, totalNanos = 0;
+		double firstTick = Double.NaN, lastTick = Double.NaN;
+		long[] kinds = new long[KIND_NAMES.length];
+		try{
+			while(reader.next()){
+				if(runs == 0)firstTick = reader.tick;
+				lastTick = reader.tick;
+				runs++;
+				totalNanos += reader.nanos;
+				if(reader.agentKind >= 0 && reader.agentKind < kinds.length)kinds[reader.agentKind]++;
+				String name = reader.taskName();
+				long[] stats = tasks.get(name);
+				if(stats == null){
+					stats = new long[3];
+					tasks.put(name, stats);
+				}
+				stats[0]++;
+				stats[1] += reader.nanos;
+				stats[2] = Math.max(stats[2], reader.nanos);
+			}
+		}finally{
+			reader.close();
+		}
+		out.println(filename+": started "+new java.util.Date(reader.getStartMillis()));
+		out.println(runs+" task runs from tick "+firstTick+" to "+lastTick+", "+String.format("%.3f", totalNanos / 1e6)+" ms in tasks");
+		for(int i = 0; i < kinds.length; i++){
+			if(kinds[i] > 0)out.println("  "+KIND_NAMES[i]+": "+kinds[i]);
+		}
+		ArrayList<String> names = new ArrayList<String>(tasks.keySet());
+		final LinkedHashMap<String,long[]> byName = tasks;
+		Collections.sort(names, new Comparator<String>() {
+			public int compare(String a, String b) {
+				// most time spent first
+				return Long.compare(byName.get(b)[1], byName.get(a)[1]);
+			}
+		});
+		out.println(String.format("%12s %12s %12s %12s  %s", "runs", "total-ms", "mean-ms", "max-ms", "task"));
+		for(String name : names){
+			long[] stats = tasks.get(name);
+			out.println(String.format("%12d %12.3f %12.6f %12.6f  %s", stats[0], stats[1] / 1e6, stats[1] / 1e6 / stats[0], stats[2] / 1e6, name));
+		}
+	}
+	/*
+	 * Returns true if both traces ran the same tasks for the same agents in the same order at the same ticks.
+	 */
+	public static boolean compare(String filenameA, String filenameB, PrintStream out) throws IOException{
+		EventTraceReader a = new EventTraceReader(filenameA);
+		EventTraceReader b = new EventTraceReader(filenameB);
+		try{
+			long index = 0;
+			while(true){
+				boolean moreA = a.next();
+				boolean moreB = b.next();
+				if(!moreA || !moreB){
+					if(moreA == moreB){
+						out.println("traces match, "+index+" task runs");
+						return true;
+					}
+					out.println("traces match for "+index+" task runs, then "+(moreA ? filenameB : filenameA)+" ends while the other continues with: "+(moreA ? a : b).describe());
+					return false;
+				}
+				if(a.eventId != b.eventId || a.tick != b.tick || a.agentKind != b.agentKind || a.agentId != b.agentId || !a.taskName().equals(b.taskName())){
+					out.println("traces differ at task run "+index+":");
+					out.println("  "+filenameA+": "+a.describe());
+					out.println("  "+filenameB+": "+b.describe());
+					return false;
+				}
+				index++;
+			}
+		}finally{
+			a.close();
+			b.close();
+		}
+	}
+}
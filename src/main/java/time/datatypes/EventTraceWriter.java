@@ -0,0 +1,175 @@
+package time.datatypes;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.nlogo.agent.Agent;
+import org.nlogo.agent.Link;
+import org.nlogo.agent.Patch;
+import org.nlogo.agent.Turtle;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.nvm.AnonymousCommand;
+
+/*
+ * EventTraceWriter records every task run by a LogoSchedule to a binary file, see time:start-trace and
+ * EventTraceReader for the format.  Records are put into preallocated buffers on the thread running the model and
+ * the full buffers are handed to a background thread that writes them out through a FileChannel.  There are at most
+ * MAX_BUFFERS buffers, allocated as the writer falls behind, so the model only waits for the disk once all of them are
+ * full, rather than holding on to ever more memory or leaving records out of the trace.
+ */
+class EventTraceWriter {
+	static final int BUFFER_SIZE = 1 << 18;
+	static final int MAX_BUFFERS = 4;
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File file;
+	private final FileChannel channel;
+	private final LinkedBlockingQueue<ByteBuffer> full = new LinkedBlockingQueue<ByteBuffer>();
+	private final LinkedBlockingQueue<ByteBuffer> free = new LinkedBlockingQueue<ByteBuffer>();
+	private int allocated = 1;
+	private final Thread writerThread;
+	private volatile IOException failure = null;
+	private ByteBuffer buffer;
+	// Tasks are numbered in the order they are first run, told apart by their procedure like in ScheduleStats
+	private final IdentityHashMap<Object,Integer> taskIds = new IdentityHashMap<Object,Integer>();
+	private Object lastProcedure = null;
+	private int lastTaskId = -1;
+
+	EventTraceWriter(File file) throws ExtensionException{
+		this.file = file;
+		try{
+			channel = new FileOutputStream(file).getChannel();
+		}catch(IOException e){
+			throw new ExtensionException("time:start-trace could not create the trace file "+file+": "+e.getMessage());
+		}
+		buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		buffer.put(EventTraceReader.MAGIC);
+		buffer.putInt(EventTraceReader.VERSION);
+		buffer.putLong(System.currentTimeMillis());
+		writerThread = new Thread(new Runnable(){
+			public void run(){
+				writeBuffers();
+			}
+		}, "time-extension-trace");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+	File getFile(){
+		return file;
+	}
+	/*
+	 * Records one run of an event's task for an agent (or the observer) that took the given number of nanoseconds.
+	 */
+	void record(LogoEvent event, Agent agent, long nanos){
+		int taskId = taskId(event.task);
+		if(buffer.remaining() < EventTraceReader.RUN_LENGTH)swap();
+		buffer.put(EventTraceReader.RUN);
+		buffer.putLong(event.id);
+		buffer.putDouble(event.tick);
+		if(agent instanceof Turtle){
+			buffer.put(EventTraceReader.TURTLE);
+			buffer.putLong(agent.id);
+		}else if(agent instanceof Patch){
+			buffer.put(EventTraceReader.PATCH);
+			buffer.putLong(agent.id);
+		}else if(agent instanceof Link){
+			buffer.put(EventTraceReader.LINK);
+			buffer.putLong(agent.id);
+		}else{
+			buffer.put(EventTraceReader.OBSERVER);
+			buffer.putLong(0L);
+		}
+		buffer.putInt(taskId);
+		buffer.putLong(nanos);
+	}
+	private int taskId(AnonymousCommand task){
+		Object procedure = task.procedure();
+		if(procedure == lastProcedure && lastTaskId >= 0)return lastTaskId;
+		Integer id = taskIds.get(procedure);
+		if(id == null){
+			id = taskIds.size();
+			taskIds.put(procedure, id);
+			String name = procedure == null ? "unknown" : task.procedure().displayName();
+			byte[] bytes = name.getBytes(UTF8);
+			if(bytes.length > EventTraceReader.MAX_NAME_LENGTH)bytes = Arrays.copyOf(bytes, EventTraceReader.MAX_NAME_LENGTH);
+			if(buffer.remaining() < 1 + 4 + 2 + bytes.length)swap();
+			buffer.put(EventTraceReader.TASK);
+			buffer.putInt(id);
+			buffer.putShort((short)bytes.length);
+			buffer.put(bytes);
+		}
+		lastProcedure = procedure;
+		lastTaskId = id;
+		return id;
+	}
+	private void swap(){
+		buffer.flip();
+		full.add(buffer);
+		buffer = free.poll();
+		if(buffer != null)return;
+		if(allocated < MAX_BUFFERS){
+			allocated++;
+			buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			return;
+		}
+		// Every buffer is waiting to be written, the writer always hands them back (even after a write has failed)
+		boolean interrupted = false;
+		while(buffer == null){
+			try{
+				buffer = free.take();
+			}catch(InterruptedException e){
+				interrupted = true;
+			}
+		}
+		if(interrupted)Thread.currentThread().interrupt();
+	}
+	private void writeBuffers(){
+		try{
+			while(true){
+				ByteBuffer next = full.take();
+				if(next == END)return;
+				try{
+					if(failure == null){
+						while(next.hasRemaining()){
+							channel.write(next);
+						}
+					}
+				}catch(IOException e){
+					failure = e;
+				}
+				next.clear();
+				free.add(next);
+			}
+		}catch(InterruptedException e){
+			// stop() gave up waiting on us
+		}
+	}
+	/*
+	 * Writes out the rest of the trace and closes the file, waiting for the background thread to finish.
+	 */
+	void stop() throws ExtensionException{
+		buffer.flip();
+		full.add(buffer);
+		full.add(END);
+		buffer = null;
+		try{
+			writerThread.join();
+		}catch(InterruptedException e){
+			writerThread.interrupt();
+			Thread.currentThread().interrupt();
+		}
+		try{
+			channel.close();
+		}catch(IOException e){
+			if(failure == null)failure = e;
+		}
+		if(failure != null)throw new ExtensionException("time:stop-trace could not write the trace file "+file+": "+failure.getMessage());
+	}
+}
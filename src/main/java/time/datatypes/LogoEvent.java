@@ -1,4 +1,6 @@
 package time.datatypes;
+import java.util.Arrays;
+
 import org.nlogo.api.Agent;
 import org.nlogo.agent.AgentSet;
 import org.nlogo.nvm.AnonymousCommand;
@@ -6,48 +8,85 @@ import org.nlogo.api.ExtensionException;
 import org.nlogo.core.ExtensionObject;
 
 import time.TimeEnums.PeriodType;
-import time.TimeExtension;
-import time.TimeUtils;
 
 public class LogoEvent implements ExtensionObject{
 	final long id;
-	public Double tick = null;
+	public double tick;
 	public AnonymousCommand task = null;
 	public AgentSet agents = null;
+	public org.nlogo.agent.Agent agent = null; // set instead of agents when the event targets a single agent
+	// Set instead of agent once single agent events have been merged into this one, see LogoSchedule.coalesce
+	org.nlogo.agent.Agent[] coalesced = null;
+	int coalescedCount = 0;
 	public Double repeatInterval = null;
 	public PeriodType repeatIntervalPeriodType = null;
 	public Boolean shuffleAgentSet = null;
+	int queueIndex = -1; // position in the schedule's LogoEventHeap, -1 when not queued
+	int cohortIndex = -1; // position in the schedule's cohort while the event is being dispatched, -1 otherwise
 
-	LogoEvent(org.nlogo.agent.AgentSet agents, AnonymousCommand  task, Double tick, Double repeatInterval, PeriodType repeatIntervalPeriodType, Boolean shuffleAgentSet) {
+	LogoEvent(long id, org.nlogo.agent.AgentSet agents, AnonymousCommand  task, double tick, Double repeatInterval, PeriodType repeatIntervalPeriodType, Boolean shuffleAgentSet) {
+		this.id = id;
 		this.agents = agents;
 		this.task = task;
 		this.tick = tick;
 		this.repeatInterval = repeatInterval;
 		this.repeatIntervalPeriodType = repeatIntervalPeriodType;
 		this.shuffleAgentSet = shuffleAgentSet;
-		this.id = TimeExtension.nextEvent;
-		TimeExtension.nextEvent++;
 	}
-	public void replaceData(Agent agent, AnonymousCommand task, Double tick) {
-		this.agents = agents;
+	LogoEvent(long id, org.nlogo.agent.Agent agent, AnonymousCommand  task, double tick, Double repeatInterval, PeriodType repeatIntervalPeriodType, Boolean shuffleAgentSet) {
+		this(id, (AgentSet)null, task, tick, repeatInterval, repeatIntervalPeriodType, shuffleAgentSet);
+		this.agent = agent;
+	}
+	public void replaceData(Agent agent, AnonymousCommand task, double tick) {
+		this.agent = (org.nlogo.agent.Agent)agent;
+		this.agents = null;
+		this.coalesced = null;
+		this.coalescedCount = 0;
 		this.task = task;
 		this.tick = tick;
 	}
 	/*
-	 * If a repeatInterval is set, this method uses it to update it's tick field and then adds itself to the
-	 * schedule argument.  The return value indicates whether the event was added to the schedule again.
+	 * Adds the agent of another single agent event for the same task and tick to this one, the agents are run in the
+	 * order they were added.
+	 */
+	void coalesce(org.nlogo.agent.Agent other){
+		if(coalesced == null){
+			coalesced = new org.nlogo.agent.Agent[4];
+			coalesced[0] = agent;
+			coalescedCount = 1;
+			agent = null;
+			shuffleAgentSet = false; // meaningless for a single agent, and the merged agents must keep their order
+		}else if(coalescedCount == coalesced.length){
+			coalesced = Arrays.copyOf(coalesced, coalescedCount * 2);
+		}
+		coalesced[coalescedCount++] = other;
+	}
+	/*
+	 * Rebuilds an event that single agent events had been merged into (or a single agent event if there is only one
+	 * agent), e.g. when a saved schedule is loaded.
+	 */
+	static LogoEvent merged(long id, org.nlogo.agent.Agent[] agents, AnonymousCommand task, double tick, Double repeatInterval, PeriodType repeatIntervalPeriodType){
+		LogoEvent event = new LogoEvent(id, agents[0], task, tick, repeatInterval, repeatIntervalPeriodType, false);
+		for(int i = 1; i < agents.length; i++){
+			event.coalesce(agents[i]);
+		}
+		return event;
+	}
+	/*
+	 * If a repeatInterval is set, this method uses it to update it's tick field so the calling schedule can put
+	 * the event back in its queue.  The return value indicates whether the event should be added to the schedule again.
 	 */
 	public Boolean reschedule(LogoSchedule callingSchedule) throws ExtensionException{
 		if(repeatInterval == null)return false;
 		if(repeatIntervalPeriodType == null){ // in this case we assume that repeatInterval is in the same units as tick
 			this.tick = this.tick + repeatInterval;
 		}else{
-			LogoTime currentTime = callingSchedule.getCurrentTime();
-			if(TimeExtension.debug)TimeUtils.printToConsole(TimeExtension.context, "resheduling: "+ repeatInterval + " " + repeatIntervalPeriodType + " ahead of " + currentTime + " or " + currentTime.getDifferenceBetween(callingSchedule.tickType, currentTime.plus(repeatIntervalPeriodType, repeatInterval))/callingSchedule.tickValue);
-			this.tick = this.tick + currentTime.getDifferenceBetween(callingSchedule.tickType, currentTime.plus(repeatIntervalPeriodType, repeatInterval))/callingSchedule.tickValue;
-			if(TimeExtension.debug)TimeUtils.printToConsole(TimeExtension.context, "event scheduled for tick: " + this.tick); 
+			double offset = callingSchedule.calendarOffset(repeatIntervalPeriodType, repeatInterval);
+			if(callingSchedule.log.isTrace())callingSchedule.log.trace("resheduling: "+ repeatInterval + " " + repeatIntervalPeriodType + " ahead of " + callingSchedule.getCurrentTime() + " or " + offset);
+			this.tick = this.tick + offset;
+			if(callingSchedule.log.isTrace())callingSchedule.log.trace("event scheduled for tick: " + this.tick); 
 		}
-		return TimeExtension.schedule.scheduleTree.add(this);
+		return true;
 	}
 	public boolean equals(Object obj) {
 		return this == obj;
@@ -63,7 +102,14 @@ public class LogoEvent implements ExtensionObject{
 	}
 	public String dump(boolean arg0, boolean arg1, boolean arg2) {
 		String result = tick + "\t";
-		if(agents!=null){
+		if(agent!=null){
+			result += agent.toString();
+		}else if(coalesced!=null){
+			for(int i = 0; i < coalescedCount; i++){
+				if(coalesced[i] != null)result += coalesced[i].toString() + ";";
+			}
+			if(result.endsWith(";"))result = result.substring(0, result.length()-1);
+		}else if(agents!=null){
 			for(Agent agent : agents.agents()){
 				result += agent.toString() + ";";
 			}
@@ -2,7 +2,7 @@ package time.datatypes;
 import java.util.Comparator;
 
 /*
- * The LogoEventComparator first compares based on tick (which is a Double) and then on id 
+ * The LogoEventComparator first compares based on tick (which is a double) and then on id 
  * so if there is a tie for tick, the event that was created first get's executed first allowing
  * for a more intuitive execution.
  */
@@ -0,0 +1,144 @@
+package time.datatypes;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * LogoEventHeap is an indexed 4-ary min-heap of LogoEvents ordered the same way as the LogoEventComparator,
+ * by tick and then by id.  The sort keys are mirrored into primitive arrays so comparisons never dereference the
+ * LogoEvent objects themselves, and every queued event records its heap slot in LogoEvent.queueIndex.
+ */
+public class LogoEventHeap implements EventQueue {
+	private static final int ARITY = 4;
+	private static final int INITIAL_CAPACITY = 64;
+
+	private double[] ticks = new double[INITIAL_CAPACITY];
+	private long[] ids = new long[INITIAL_CAPACITY];
+	private LogoEvent[] events = new LogoEvent[INITIAL_CAPACITY];
+	private int size = 0;
+
+	public int size(){
+		return size;
+	}
+	public boolean isEmpty(){
+		return size == 0;
+	}
+	public LogoEvent peek(){
+		return size == 0 ? null : events[0];
+	}
+	public void add(LogoEvent event){
+		ensureCapacity(size + 1);
+		siftUp(size++, event);
+	}
+	public void addAll(ArrayList<LogoEvent> batch){
+		int n = batch.size();
+		ensureCapacity(size + n);
+		if(n < size){
+			for(int i = 0; i < n; i++){
+				siftUp(size++, batch.get(i));
+			}
+			return;
+		}
+		// The batch dominates the heap, append everything and restore the heap property bottom-up in O(n) (Floyd)
+		for(int i = 0; i < n; i++){
+			place(size++, batch.get(i));
+		}
+		for(int i = (size - 2) / ARITY; i >= 0; i--){
+			siftDown(i, events[i]);
+		}
+	}
+	public LogoEvent poll(){
+		if(size == 0)return null;
+		LogoEvent first = events[0];
+		first.queueIndex = -1;
+		int last = --size;
+		LogoEvent moved = events[last];
+		events[last] = null;
+		if(last > 0)siftDown(0, moved);
+		return first;
+	}
+	public void pollCohort(ArrayList<LogoEvent> cohort){
+		if(size == 0)return;
+		double tick = ticks[0];
+		do{
+			cohort.add(poll());
+		}while(size > 0 && ticks[0] == tick);
+	}
+	public boolean remove(LogoEvent event){
+		int index = event.queueIndex;
+		if(!contains(event))return false;
+		event.queueIndex = -1;
+		int last = --size;
+		LogoEvent moved = events[last];
+		events[last] = null;
+		if(index < last){
+			// Fill the hole with the last event and let it find its place in either direction
+			siftDown(index, moved);
+			if(events[index] == moved)siftUp(index, moved);
+		}
+		return true;
+	}
+	boolean contains(LogoEvent event){
+		int index = event.queueIndex;
+		return index >= 0 && index < size && events[index] == event;
+	}
+	public void clear(){
+		for(int i = 0; i < size; i++){
+			events[i].queueIndex = -1;
+			events[i] = null;
+		}
+		size = 0;
+	}
+	/*
+	 * Returns a copy of the queued events in execution order, this is only meant for reporting (e.g. show-schedule)
+	 * and costs O(n log n).
+	 */
+	public LogoEvent[] toSortedArray(){
+		LogoEvent[] copy = Arrays.copyOf(events, size);
+		Arrays.sort(copy, new LogoEventComparator());
+		return copy;
+	}
+	private void ensureCapacity(int capacity){
+		if(capacity <= events.length)return;
+		int newCapacity = Math.max(capacity, events.length * 2);
+		ticks = Arrays.copyOf(ticks, newCapacity);
+		ids = Arrays.copyOf(ids, newCapacity);
+		events = Arrays.copyOf(events, newCapacity);
+	}
+	private void siftUp(int index, LogoEvent event){
+		double tick = event.tick;
+		long id = event.id;
+		while(index > 0){
+			int parent = (index - 1) / ARITY;
+			if(!isBefore(tick, id, ticks[parent], ids[parent]))break;
+			place(index, events[parent]);
+			index = parent;
+		}
+		place(index, event);
+	}
+	private void siftDown(int index, LogoEvent event){
+		double tick = event.tick;
+		long id = event.id;
+		while(true){
+			int firstChild = index * ARITY + 1;
+			if(firstChild >= size)break;
+			int lastChild = Math.min(firstChild + ARITY, size);
+			int best = firstChild;
+			for(int child = firstChild + 1; child < lastChild; child++){
+				if(isBefore(ticks[child], ids[child], ticks[best], ids[best]))best = child;
+			}
+			if(!isBefore(ticks[best], ids[best], tick, id))break;
+			place(index, events[best]);
+			index = best;
+		}
+		place(index, event);
+	}
+	private void place(int index, LogoEvent event){
+		events[index] = event;
+		ticks[index] = event.tick;
+		ids[index] = event.id;
+		event.queueIndex = index;
+	}
+	private static boolean isBefore(double tickA, long idA, double tickB, long idB){
+		return tickA < tickB || (tickA == tickB && idA < idB);
+	}
+}
@@ -1,11 +1,14 @@
 package time.datatypes;
+import java.io.File;
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.TreeSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.nlogo.agent.Agent;
 import org.nlogo.agent.AgentIterator;
-import org.nlogo.agent.ArrayAgentSet;
 import org.nlogo.agent.TickCounter;
 import org.nlogo.agent.TreeAgentSet;
 import org.nlogo.agent.World;
@@ -14,8 +17,10 @@ import org.nlogo.nvm.AnonymousCommand;
 import org.nlogo.api.AnonymousProcedure;
 import org.nlogo.api.Argument;
 import org.nlogo.api.Context;
+import org.nlogo.api.Dump;
 import org.nlogo.api.ExtensionException;
 import org.nlogo.api.LogoException;
+import org.nlogo.api.MersenneTwisterFast;
 import org.nlogo.core.AgentKindJ;
 import org.nlogo.core.ExtensionObject;
 import org.nlogo.core.LogoList;
@@ -23,20 +28,59 @@ import org.nlogo.nvm.ExtensionContext;
 
 import time.TimeEnums.AddType;
 import time.TimeEnums.PeriodType;
-import time.TimeExtension;
+import time.TimeLogger;
 import time.TimeUtils;
+import time.jfr.TimeEvents;
 
 public class LogoSchedule implements ExtensionObject{
-		LogoEventComparator comparator = new LogoEventComparator();
-		public TreeSet<LogoEvent> scheduleTree = new TreeSet<LogoEvent>(comparator);
+		EventQueue scheduleQueue = new LogoEventHeap();
+		// Events taken out of the queue for dispatch at the current tick, and how many of them are still pending
+		ArrayList<LogoEvent> cohort = new ArrayList<LogoEvent>();
+		int inFlight = 0;
+		boolean dispatching = false;
+		// Recycled by the dispatch loop so running a task for an agent does not allocate
+		org.nlogo.nvm.Context recycledContext = null;
+		Agent[] agentBuffer = new Agent[16];
+		long agentsDispatched = 0; // number of times a task has been run for an agent or the observer
+		EventTraceWriter trace = null; // see time:start-trace
+		final TimeLogger log; // the debug log of the extension instance that owns the schedule, see time:set-log-level
 		TickCounter tickCounter = null;
+		long nextEvent = 0; // id of the next event, ids break ties between events scheduled for the same tick
+		LogoEvent lastEvent = null; // the event most recently added, see time:last-scheduled-event
+		boolean lastEventMerged = false; // the event most recently added was merged into another, so it has no handle
+		// See time:set-coalescing, the single agent event that the next single agent event can be merged into
+		boolean coalescing = false;
+		LogoEvent coalesceTarget = null;
+		// The events of each agent, see time:unschedule-agent
+		final AgentEventIndex agentIndex = new AgentEventIndex();
+		final ScheduleStats stats = new ScheduleStats();
+		// Frozen copies of the schedule by name, see time:save-schedule-template.  They survive clear-all.
+		final HashMap<String,ScheduleTemplate> templates = new HashMap<String,ScheduleTemplate>();
 		
 		// The following three fields track an anchored schedule
 		LogoTime timeAnchor = null;
 		PeriodType tickType = null;
 		Double tickValue = null;
+		// Tick offsets of MONTH/YEAR repeat intervals, see calendarOffset
+		static final int MAX_CALENDAR_OFFSETS = 4096;
+		LinkedHashMap<CalendarOffsetKey,Double> calendarOffsets = new LinkedHashMap<CalendarOffsetKey,Double>(64, 0.75f, true){
+			protected boolean removeEldestEntry(Map.Entry<CalendarOffsetKey,Double> eldest) {
+				return size() > MAX_CALENDAR_OFFSETS;
+			}
+		};
+		// Anchors shared by the times that time:anchor-to-ticks anchors the same way, see tickAnchor
+		static final int MAX_TICK_ANCHORS = 64;
+		LinkedHashMap<TickAnchor,TickAnchor> tickAnchors = new LinkedHashMap<TickAnchor,TickAnchor>(16, 0.75f, true){
+			protected boolean removeEldestEntry(Map.Entry<TickAnchor,TickAnchor> eldest) {
+				return size() > MAX_TICK_ANCHORS;
+			}
+		};
 
 		public LogoSchedule() {
+			this(new TimeLogger());
+		}
+		public LogoSchedule(TimeLogger log) {
+			this.log = log;
 		}
 		public boolean equals(Object obj) {
 			return this == obj;
@@ -44,18 +88,115 @@ public class LogoSchedule implements ExtensionObject{
 		public boolean isAnchored(){
 			return timeAnchor != null;
 		}
+		/*
+		 * Switch the backend that holds the pending events, any events already scheduled are carried over.  All
+		 * backends dispatch events in the same order, they only differ in how they scale with the number of events.
+		 */
+		public void setSchedulerMode(String mode) throws ExtensionException{
+			EventQueue newQueue = null;
+			mode = mode.trim().toLowerCase();
+			if(mode.equals("heap")){
+				if(scheduleQueue instanceof LogoEventHeap)return;
+				newQueue = new LogoEventHeap();
+			}else if(mode.equals("calendar")){
+				if(scheduleQueue instanceof CalendarEventQueue)return;
+				newQueue = new CalendarEventQueue();
+			}else if(mode.equals("wheel")){
+				if(scheduleQueue instanceof TimingWheelEventQueue)return;
+				newQueue = new TimingWheelEventQueue();
+			}else{
+				throw new ExtensionException("illegal scheduler mode: "+mode+", expecting \"heap\", \"calendar\" or \"wheel\"");
+			}
+			while(!scheduleQueue.isEmpty()){
+				newQueue.add(scheduleQueue.poll());
+			}
+			scheduleQueue = newQueue;
+		}
 		public void anchorSchedule(LogoTime time, Double tickValue, PeriodType tickType){
 			try {
 				this.timeAnchor = new LogoTime(time);
 				this.tickType = tickType;
 				this.tickValue = tickValue;
+				this.calendarOffsets.clear();
 			} catch (ExtensionException e) {
 				e.printStackTrace();
 			}
 		}
-		public Double timeToTick(LogoTime time) throws ExtensionException{
+		/*
+		 * Returns the TickAnchor for an anchor time, sharing one made earlier for the same anchor if there is one.  Kept
+		 * here rather than in a static so it belongs to the workspace's world and goes with it.
+		 */
+		TickAnchor tickAnchor(LogoTime origin, PeriodType tickType, Double tickValue, World world){
+			TickAnchor anchor = new TickAnchor(origin, tickType, tickValue, world);
+			TickAnchor existing = tickAnchors.get(anchor);
+			if(existing != null)return existing;
+			tickAnchors.put(anchor, anchor);
+			return anchor;
+		}
+		public double timeToTick(LogoTime time) throws ExtensionException{
 			if(this.timeAnchor.dateType != time.dateType)throw new ExtensionException("Cannot schedule event to occur at a LogoTime of type "+time.dateType.toString()+" because the schedule is anchored to a LogoTime of type "+this.timeAnchor.dateType.toString()+".  Types must be consistent.");
-			return this.timeAnchor.getDifferenceBetween(this.tickType, time)/this.tickValue;
+			return this.timeAnchor.differenceBetween(this.tickType, time)/this.tickValue;
+		}
+		/*
+		 * Returns the number of ticks between the current time and the same time interval periods of periodType later,
+		 * used to reschedule events that repeat by MONTH or YEAR.  The offset only depends on the anchor and the current
+		 * tick, and every event repeating by the same period at the same tick asks for it, so the result is memoized
+		 * until the schedule is anchored again.
+		 */
+		double calendarOffset(PeriodType periodType, double interval) throws ExtensionException{
+			CalendarOffsetKey key = new CalendarOffsetKey(periodType, interval, getTickCounter().ticks());
+			Double offset = calendarOffsets.get(key);
+			if(offset == null){
+				LogoTime currentTime = getCurrentTime();
+				offset = currentTime.differenceBetween(this.tickType, currentTime.plus(periodType, interval))/this.tickValue;
+				calendarOffsets.put(key, offset);
+			}
+			return offset;
+		}
+		/*
+		 * Reads the tick (a number or, if the schedule is anchored, a LogoTime) at which an event should occur, which
+		 * may not be before the present moment.
+		 */
+		double getTickFromArgument(Argument args[], int argIndex, String primName, String ordinal, Context context) throws ExtensionException, LogoException {
+			return toTick(args[argIndex].get(), primName, "as the "+ordinal+" argument", ((ExtensionContext)context).workspace().world().ticks());
+		}
+		double toTick(Object obj, String primName, String where, double now) throws ExtensionException {
+			double eventTick;
+			if(obj instanceof Double){
+				eventTick = (Double)obj;
+			}else if(obj instanceof LogoTime){
+				if(!this.isAnchored())throw new ExtensionException("A LogoEvent can only be scheduled to occur at a LogoTime if the discrete event schedule has been anchored to a LogoTime, see time:anchor-schedule");
+				LogoTime time = (LogoTime)obj;
+				time.updateFromTick();
+				eventTick = this.timeToTick(time);
+			}else{
+				throw new ExtensionException("time:"+primName+" expecting a number or logotime "+where);
+			}
+			if (eventTick < now) throw new ExtensionException("Attempted to schedule an event for tick "+ eventTick +" which is before the present 'moment' of "+now);
+			return eventTick;
+		}
+		void checkTarget(Object target, String primName, String where) throws ExtensionException {
+			if (!(target instanceof Agent) && !(target instanceof AgentSet) && !((target instanceof String) && target.toString().toLowerCase().equals("observer"))) 
+				throw new ExtensionException("time:"+primName+" expecting an agent, agentset, or the string \"observer\" "+where);
+		}
+		AnonymousCommand checkTask(Object task, String primName, String where) throws ExtensionException {
+			if (!(task instanceof AnonymousCommand)) throw new ExtensionException("time:"+primName+" expecting a command task "+where);
+			if(((AnonymousCommand)task).formals().length > 0) throw new ExtensionException("time:"+primName+" expecting "+where+" a command task that takes no arguments of its own, but found a task which expects its own arguments, this kind of task is unsupported by the time extension.");
+			return (AnonymousCommand)task;
+		}
+		/*
+		 * Creates the next event of this schedule for a target that has already been checked with checkTarget.
+		 */
+		LogoEvent newEvent(Object target, AnonymousCommand task, double eventTick, Double repeatInterval, PeriodType repeatIntervalPeriodType, Boolean shuffleAgentSet){
+			if (target instanceof org.nlogo.agent.Agent){
+				// A single agent is stored on the event directly, there's no need to wrap it in an agentset
+				return new LogoEvent(nextEvent++,(org.nlogo.agent.Agent)target,task,eventTick,repeatInterval,repeatIntervalPeriodType,shuffleAgentSet);
+			}else if(target instanceof AgentSet){
+				return new LogoEvent(nextEvent++,(AgentSet)target,task,eventTick,repeatInterval,repeatIntervalPeriodType,shuffleAgentSet);
+			}else{
+				// leave the agents as null to signal observer should be used
+				return new LogoEvent(nextEvent++,(AgentSet)null,task,eventTick,repeatInterval,repeatIntervalPeriodType,shuffleAgentSet);
+			}
 		}
 		public void addEvent(Argument args[], Context context, AddType addType) throws ExtensionException, LogoException {
 			String primName = null;
@@ -79,19 +220,9 @@ public class LogoSchedule implements ExtensionObject{
 				if(args.length<4)throw new ExtensionException("time:repeat-shuffled must have 4 or 5 arguments: schedule agent task tick/time number (period-type)");
 				break;
 			}
-			if (!(args[0].get() instanceof Agent) && !(args[0].get() instanceof AgentSet) && !((args[0].get() instanceof String) && args[0].get().toString().toLowerCase().equals("observer"))) 
-				throw new ExtensionException("time:"+primName+" expecting an agent, agentset, or the string \"observer\" as the first argument");
-			if (!(args[1].get() instanceof AnonymousCommand)) throw new ExtensionException("time:"+primName+" expecting a command task as the second argument");
-			if(((AnonymousCommand)args[1].get()).formals().length > 0) throw new ExtensionException("time:"+primName+" expecting as the second argument a command task that takes no arguments of its own, but found a task which expects its own arguments, this kind of task is unsupported by the time extension.");
-			if(args[2].get().getClass().equals(Double.class)){
-				eventTick = args[2].getDoubleValue();
-			}else if(args[2].get().getClass().equals(LogoTime.class)){
-				if(!this.isAnchored())throw new ExtensionException("A LogoEvent can only be scheduled to occur at a LogoTime if the discrete event schedule has been anchored to a LogoTime, see time:anchor-schedule");
-				eventTick = this.timeToTick(TimeUtils.getTimeFromArgument(args, 2));
-			}else{
-				throw new ExtensionException("time:"+primName+" expecting a number or logotime as the third argument");
-			}
-			if (eventTick < ((ExtensionContext)context).workspace().world().ticks()) throw new ExtensionException("Attempted to schedule an event for tick "+ eventTick +" which is before the present 'moment' of "+((ExtensionContext)context).workspace().world().ticks());
+			checkTarget(args[0].get(), primName, "as the first argument");
+			AnonymousCommand task = checkTask(args[1].get(), primName, "as the second argument");
+			eventTick = getTickFromArgument(args, 2, primName, "third", context);
 			
 			PeriodType repeatIntervalPeriodType = null;
 			Double repeatInterval = null;
@@ -103,28 +234,251 @@ public class LogoSchedule implements ExtensionObject{
 					if(!this.isAnchored())throw new ExtensionException("A LogoEvent can only be scheduled to repeat using a period type if the discrete event schedule has been anchored to a LogoTime, see time:anchor-schedule");
 					repeatIntervalPeriodType = TimeUtils.stringToPeriodType(TimeUtils.getStringFromArgument(args, 4));
 					if(repeatIntervalPeriodType != PeriodType.MONTH && repeatIntervalPeriodType != PeriodType.YEAR){
-						repeatInterval = this.timeAnchor.getDifferenceBetween(this.tickType, this.timeAnchor.plus(repeatIntervalPeriodType, repeatInterval))/this.tickValue;
-						if(TimeExtension.debug)TimeUtils.printToConsole(context, "from:"+repeatIntervalPeriodType+" to:"+this.tickType+" interval:"+repeatInterval);
+						repeatInterval = this.timeAnchor.differenceBetween(this.tickType, this.timeAnchor.plus(repeatIntervalPeriodType, repeatInterval))/this.tickValue;
+						if(log.isDebug())log.debug("from:"+repeatIntervalPeriodType+" to:"+this.tickType+" interval:"+repeatInterval);
 						repeatIntervalPeriodType = null;
 					}else{
-						if(TimeExtension.debug)TimeUtils.printToConsole(context, "repeat every: "+ repeatInterval + " " + repeatIntervalPeriodType);
+						if(log.isDebug())log.debug("repeat every: "+ repeatInterval + " " + repeatIntervalPeriodType);
 					}
 				}
 			}
 			Boolean shuffleAgentSet = (addType == AddType.SHUFFLE || addType == AddType.REPEAT_SHUFFLED);
 
-			AgentSet agentSet = null;
-			if (args[0].get() instanceof org.nlogo.agent.Agent){
-				Agent theAgent = (org.nlogo.agent.Agent)args[0].getAgent();
-				agentSet = new ArrayAgentSet(AgentKindJ.Turtle(),theAgent.toString(),new Agent[]{ theAgent });
-			}else if(args[0].get() instanceof AgentSet){
-				agentSet = (AgentSet) args[0].getAgentSet();
-			}else{
-				// leave agentSet as null to signal observer should be used
+			if(coalescing && coalesce(args[0].get(), task, eventTick, repeatInterval, repeatIntervalPeriodType))return;
+			LogoEvent event = newEvent(args[0].get(),task,eventTick,repeatInterval,repeatIntervalPeriodType,shuffleAgentSet);
+			if(log.isDebug())log.debug("scheduling event: "+event.dump(false, false, false));
+			scheduleQueue.add(event);
+			indexEvent(event);
+			lastEvent = event;
+			lastEventMerged = false;
+			coalesceTarget = (coalescing && event.agent != null) ? event : null;
+			stats.enqueued++;
+			stats.recordDepth(size());
+			if(agentIndex.isSweepDue(scheduleQueue.size()))purgeDeadAgents();
+		}
+		/*
+		 * time:set-coalescing, when on a single agent event is merged into the event added just before it if that one
+		 * was also for a single agent with the same task, tick and repeat interval.  No other event can come between
+		 * them, so the merged event runs its agents exactly when the separate events would have run.  Only agents of one
+		 * kind are merged, a merged event is saved (see ScheduleSnapshot and ScheduleTemplate) with a single agent kind.
+		 */
+		public void setCoalescing(boolean coalescing){
+			this.coalescing = coalescing;
+			coalesceTarget = null;
+		}
+		private boolean coalesce(Object target, AnonymousCommand task, double eventTick, Double repeatInterval, PeriodType repeatIntervalPeriodType){
+			LogoEvent last = coalesceTarget;
+			if(last == null || !(target instanceof org.nlogo.agent.Agent) || last.task != task || last.tick != eventTick
+					|| last.repeatIntervalPeriodType != repeatIntervalPeriodType
+					|| (repeatInterval == null ? last.repeatInterval != null : !repeatInterval.equals(last.repeatInterval)))return false;
+			org.nlogo.agent.Agent first = last.coalesced == null ? last.agent : last.coalesced[0];
+			if(first.kind() != ((org.nlogo.agent.Agent)target).kind())return false;
+			last.coalesce((org.nlogo.agent.Agent)target);
+			agentIndex.add((org.nlogo.agent.Agent)target, last);
+			// The merged event also runs other agents, handing it out would let time:cancel-event cancel them all
+			lastEvent = null;
+			lastEventMerged = true;
+			if(log.isTrace())log.trace("coalesced into event "+last.id+": "+target);
+			stats.enqueued++;
+			stats.coalesced++;
+			if(agentIndex.isSweepDue(scheduleQueue.size()))purgeDeadAgents();
+			return true;
+		}
+		/*
+		 * time:schedule-events, schedules a task for one target at every tick (or LogoTime) in a list.  The target and
+		 * task are checked once and the events are loaded into the queue in one go.
+		 */
+		public void addEvents(Argument args[], Context context) throws ExtensionException, LogoException {
+			Object target = args[0].get();
+			checkTarget(target, "schedule-events", "as the first argument");
+			AnonymousCommand task = checkTask(args[1].get(), "schedule-events", "as the second argument");
+			LogoList ticks = TimeUtils.getListFromArgument(args, 2);
+			double now = ((ExtensionContext)context).workspace().world().ticks();
+			ArrayList<LogoEvent> batch = new ArrayList<LogoEvent>(ticks.size());
+			for(Object tick : ticks.toJava()){
+				batch.add(newEvent(target, task, toTick(tick, "schedule-events", "in the list of ticks", now), null, null, false));
 			}
-			LogoEvent event = new LogoEvent(agentSet,(AnonymousCommand) args[1].getCommand(),eventTick,repeatInterval,repeatIntervalPeriodType,shuffleAgentSet);
-			if(TimeExtension.debug)TimeUtils.printToConsole(context,"scheduling event: "+event.dump(false, false, false));
-			scheduleTree.add(event);
+			addBatch(batch, context);
+		}
+		/*
+		 * time:schedule-agent-events, schedules a task once for each [agent tick] pair in a list.
+		 */
+		public void addAgentEvents(Argument args[], Context context) throws ExtensionException, LogoException {
+			AnonymousCommand task = checkTask(args[0].get(), "schedule-agent-events", "as the first argument");
+			LogoList pairs = TimeUtils.getListFromArgument(args, 1);
+			double now = ((ExtensionContext)context).workspace().world().ticks();
+			ArrayList<LogoEvent> batch = new ArrayList<LogoEvent>(pairs.size());
+			for(Object obj : pairs.toJava()){
+				if(!(obj instanceof LogoList) || ((LogoList)obj).size() != 2)throw new ExtensionException("time:schedule-agent-events expecting a list of [agent tick] pairs as the second argument, found this instead: " + Dump.logoObject(obj));
+				LogoList pair = (LogoList)obj;
+				checkTarget(pair.get(0), "schedule-agent-events", "as the first item of each pair");
+				batch.add(newEvent(pair.get(0), task, toTick(pair.get(1), "schedule-agent-events", "as the second item of each pair", now), null, null, false));
+			}
+			addBatch(batch, context);
+		}
+		/*
+		 * Nothing is added unless every event in the batch was valid, so a bad list leaves the schedule untouched.
+		 */
+		private void addBatch(ArrayList<LogoEvent> batch, Context context) throws ExtensionException{
+			if(batch.isEmpty())return;
+			if(log.isDebug())log.debug("scheduling "+batch.size()+" events");
+			scheduleQueue.addAll(batch);
+			lastEvent = batch.get(batch.size() - 1);
+			lastEventMerged = false;
+			coalesceTarget = null;
+			for(LogoEvent event : batch){
+				indexEvent(event);
+			}
+			stats.enqueued += batch.size();
+			stats.recordDepth(size());
+			if(agentIndex.isSweepDue(scheduleQueue.size()))purgeDeadAgents();
+		}
+		private void indexEvent(LogoEvent event){
+			if(event.agent != null){
+				agentIndex.add(event.agent, event);
+			}else if(event.coalesced != null){
+				for(int i = 0; i < event.coalescedCount; i++){
+					if(event.coalesced[i] != null)agentIndex.add(event.coalesced[i], event);
+				}
+			}
+		}
+		/*
+		 * time:unschedule-agent, takes every event scheduled for the agent alone out of the schedule (or the agent out of
+		 * the event its event was merged into), returns the number of events removed.  Events for agentsets are left
+		 * alone, agents drop out of those by themselves.
+		 */
+		public int unscheduleAgent(org.nlogo.agent.Agent agent){
+			int removed = 0;
+			for(LogoEvent event : agentIndex.remove(agent)){
+				if(event.agent == agent){
+					if(removeEvent(event))removed++;
+				}else if(event.coalesced != null){
+					boolean empty = true;
+					for(int i = 0; i < event.coalescedCount; i++){
+						if(event.coalesced[i] == agent){
+							event.coalesced[i] = null;
+							removed++;
+						}else if(event.coalesced[i] != null){
+							empty = false;
+						}
+					}
+					if(empty)removeEvent(event);
+				}
+			}
+			stats.cancelled += removed;
+			if(log.isDebug())log.debug("unscheduled "+removed+" events for "+agent);
+			return removed;
+		}
+		/*
+		 * Takes the events of agents that have died out of the schedule rather than leaving them to be skipped when
+		 * their tick comes, called every so often as events are added, see AgentEventIndex.
+		 */
+		void purgeDeadAgents(){
+			int purged = 0;
+			for(LogoEvent event : agentIndex.sweep()){
+				if(event.agent != null || targetsOnlyDeadAgents(event)){
+					if(removeEvent(event))purged++;
+				}
+			}
+			stats.purged += purged;
+			if(log.isDebug())log.debug("purged "+purged+" events of agents that have died");
+		}
+		/*
+		 * True if the event is for a single agent (or merged single agent events) and none of them are alive.
+		 */
+		static boolean targetsOnlyDeadAgents(LogoEvent event){
+			if(event.agent != null)return event.agent.id == -1;
+			if(event.coalesced == null)return false;
+			for(int i = 0; i < event.coalescedCount; i++){
+				if(event.coalesced[i] != null && event.coalesced[i].id != -1)return false;
+			}
+			return true;
+		}
+		/*
+		 * time:start-trace, records every task run from now on to a binary file (see EventTraceWriter), replacing any
+		 * trace already running.
+		 */
+		public void startTrace(File file) throws ExtensionException{
+			stopTrace();
+			trace = new EventTraceWriter(file);
+		}
+		public void stopTrace() throws ExtensionException{
+			if(trace == null)return;
+			EventTraceWriter stopping = trace;
+			trace = null;
+			stopping.stop();
+		}
+		public void saveSchedule(File file, ExtensionContext context) throws ExtensionException{
+			ScheduleSnapshot.save(this, file, context.workspace().world());
+		}
+		public void loadSchedule(File file, LogoList tasks, ExtensionContext context) throws ExtensionException{
+			ScheduleSnapshot.load(this, file, tasks, context.workspace().world());
+		}
+		public void saveTemplate(String name, ExtensionContext context) throws ExtensionException{
+			if(dispatching)throw new ExtensionException("time:save-schedule-template cannot be used while the schedule is dispatching events");
+			ScheduleTemplate template = new ScheduleTemplate(this, context.workspace().world());
+			templates.put(name, template);
+			if(log.isDebug())log.debug("saved schedule template "+name+" with "+template.size()+" events");
+		}
+		public LogoList getTemplateNames(){
+			ArrayList<String> names = new ArrayList<String>(templates.keySet());
+			Collections.sort(names);
+			return LogoList.fromJava(names);
+		}
+		public void instantiateTemplate(String name, ExtensionContext context) throws ExtensionException{
+			if(dispatching)throw new ExtensionException("time:instantiate-schedule-template cannot be used while the schedule is dispatching events");
+			ScheduleTemplate template = templates.get(name);
+			if(template == null)throw new ExtensionException("time:instantiate-schedule-template there is no schedule template named "+name+", see time:save-schedule-template");
+			template.instantiate(this, context.workspace().world());
+			if(log.isDebug())log.debug("instantiated schedule template "+name+" with "+template.size()+" events");
+		}
+		public TimeLogger getLogger(){
+			return log;
+		}
+		public ScheduleStats getStats(){
+			return stats;
+		}
+		public LogoEvent getLastEvent() throws ExtensionException{
+			if(lastEventMerged)throw new ExtensionException("time:last-scheduled-event the last event added was merged into an earlier event for other agents (see time:set-coalescing), so it has no event of its own, use time:last-scheduled-event right after scheduling each event you need to keep or time:unschedule-agent");
+			if(lastEvent == null)throw new ExtensionException("time:last-scheduled-event no event has been added to the schedule yet");
+			// The model now holds the event, so don't merge other agents into it behind the model's back
+			coalesceTarget = null;
+			return lastEvent;
+		}
+		/*
+		 * Takes an event out of the schedule, whether it is waiting in the queue or is part of the cohort being dispatched,
+		 * returns false if the event was not pending (e.g. it has already been dispatched and does not repeat).
+		 */
+		public boolean cancelEvent(LogoEvent event){
+			if(!removeEvent(event))return false;
+			stats.cancelled++;
+			return true;
+		}
+		private boolean removeEvent(LogoEvent event){
+			if(event == coalesceTarget)coalesceTarget = null;
+			if(scheduleQueue.remove(event))return true;
+			int i = event.cohortIndex;
+			if(i >= 0 && i < cohort.size() && cohort.get(i) == event){
+				cohort.set(i, null);
+				event.cohortIndex = -1;
+				inFlight--;
+				return true;
+			}
+			return false;
+		}
+		/*
+		 * Moves an event to a new tick, an event that is no longer pending is put back in the schedule.  The event keeps its
+		 * id so it still runs before any event added after it for the same tick.
+		 */
+		public void rescheduleEvent(LogoEvent event, Argument args[], Context context) throws ExtensionException, LogoException {
+			double eventTick = getTickFromArgument(args, 1, "reschedule-event", "second", context);
+			removeEvent(event);
+			event.tick = eventTick;
+			if(log.isDebug())log.debug("rescheduling event: "+event.dump(false, false, false));
+			scheduleQueue.add(event);
+			indexEvent(event);
+			stats.rescheduled++;
+			stats.recordDepth(size());
 		}
 		TickCounter getTickCounter() throws ExtensionException{
 			if(tickCounter==null)throw new ExtensionException("Tick counter has not been initialized in time extension.");
@@ -141,63 +495,219 @@ public class LogoSchedule implements ExtensionObject{
 		}	
 		public void performScheduledTasks(Argument args[], Context context, LogoTime untilTime) throws ExtensionException, LogoException {
 			if(!this.isAnchored())throw new ExtensionException("time:go-until can only accept a LogoTime as a stopping time if the schedule is anchored using time:anchore-schedule");
-			if(TimeExtension.debug)TimeUtils.printToConsole(context,"timeAnchor: "+this.timeAnchor+" tickType: "+this.tickType+" tickValue:"+this.tickValue + " untilTime:" + untilTime);
-			Double untilTick = this.timeAnchor.getDifferenceBetween(this.tickType, untilTime)/this.tickValue;
+			if(log.isDebug())log.debug("timeAnchor: "+this.timeAnchor+" tickType: "+this.tickType+" tickValue:"+this.tickValue + " untilTime:" + untilTime);
+			Double untilTick = this.timeAnchor.differenceBetween(this.tickType, untilTime)/this.tickValue;
 			performScheduledTasks(args,context,untilTick);
 		}
 		public void performScheduledTasks(Argument args[], Context context, Double untilTick) throws ExtensionException, LogoException {
+			if(dispatching)throw new ExtensionException("time:go and time:go-until cannot be called from within a scheduled event");
 			ExtensionContext extcontext = (ExtensionContext) context;
 			Object[] emptyArgs = new Object[1]; // This extension is only for CommandTasks, so we know there aren't any args to pass in
-			LogoEvent event = scheduleTree.isEmpty() ? null : scheduleTree.first();
-			ArrayList<org.nlogo.agent.Agent> theAgents = new ArrayList<org.nlogo.agent.Agent>();
+			dispatching = true;
+			try{
+				if(!dispatchUntil(extcontext, untilTick, emptyArgs))return;
+			}finally{
+				dispatching = false;
+			}
+			if(untilTick!=null && untilTick < Double.MAX_VALUE && untilTick > getTickCounter(extcontext).ticks()) getTickCounter(extcontext).tick(untilTick-getTickCounter(extcontext).ticks());
+		}
+		/*
+		 * Dispatch events one tick-cohort at a time until the schedule is exhausted or the next event falls after untilTick,
+		 * returns false if the run was stopped.
+		 */
+		private boolean dispatchUntil(ExtensionContext extcontext, Double untilTick, Object[] emptyArgs) throws ExtensionException, LogoException {
+			LogoEvent event = scheduleQueue.peek();
 			while(event != null && event.tick <= untilTick){
-				if(TimeExtension.debug)TimeUtils.printToConsole(context,"performing event-id: "+event.id+" for agent: "+event.agents+" at tick:"+event.tick + " ");
-				if(TimeExtension.debug)TimeUtils.printToConsole(context,"tick counter before: "+getTickCounter(extcontext)+", "+getTickCounter(extcontext).ticks());
+				// Take every event due at this tick out of the queue in one go, they come out in id order
+				scheduleQueue.pollCohort(cohort);
+				coalesceTarget = null;
+				inFlight = cohort.size();
+				for(int i = 0; i < inFlight; i++){
+					cohort.get(i).cohortIndex = i;
+				}
+				if(log.isDebug())log.debug("performing "+cohort.size()+" events at tick:"+event.tick);
+				if(log.isDebug())log.debug("tick counter before: "+getTickCounter(extcontext)+", "+getTickCounter(extcontext).ticks());
 				getTickCounter(extcontext).tick(event.tick-getTickCounter(extcontext).ticks());
-				if(TimeExtension.debug)TimeUtils.printToConsole(context,"tick counter after: "+getTickCounter(extcontext)+", "+getTickCounter(extcontext).ticks());
-				
-				if(event.agents == null){
-					if(TimeExtension.debug)TimeUtils.printToConsole(context,"single agent");
-					org.nlogo.nvm.Context nvmContext = new org.nlogo.nvm.Context(extcontext.nvmContext().job,
-																					(org.nlogo.agent.Agent)extcontext.getAgent().world().observer(),
-																					extcontext.nvmContext().ip,
-																					extcontext.nvmContext().activation,
-																					extcontext.workspace());
-					event.task.perform(nvmContext, emptyArgs);
-				}else{
-					AgentIterator iter = null;
-					if(event.shuffleAgentSet){
-						iter = event.agents.shufflerator(extcontext.nvmContext().job.random);
-					}else{
-						iter = event.agents.iterator();
+				if(log.isDebug())log.debug("tick counter after: "+getTickCounter(extcontext)+", "+getTickCounter(extcontext).ticks());
+				double cohortTick = event.tick;
+				int cohortSize = cohort.size();
+				long agentsBefore = agentsDispatched;
+				Object flightEvent = TimeEvents.ENABLED ? TimeEvents.beginCohort() : null;
+				try{
+					for(int i = 0; i < cohort.size(); i++){
+						event = cohort.get(i);
+						if(event == null)continue; // dropped by time:clear-schedule while the cohort was running
+						if(log.isTrace())log.trace("performing event-id: "+event.id+" for agent: "+(event.agent != null ? event.agent : event.agents)+" at tick:"+event.tick + " ");
+						// If the run is stopped the event stays in the schedule as it is
+						long start = System.nanoTime();
+						boolean running = performEvent(event, extcontext, emptyArgs);
+						stats.recordDispatch(event.task, System.nanoTime() - start);
+						if(!running)return false;
+
+						// Advance the event if it repeats, it goes back in the queue along with the rest of the cohort
+						if(cohort.get(i) == event){
+							if(event.repeatInterval != null && targetsOnlyDeadAgents(event)){
+								// A repeating event for agents that have all died would otherwise be put back forever
+								stats.purged++;
+								cohort.set(i, null);
+								event.cohortIndex = -1;
+								inFlight--;
+							}else if(event.reschedule(this)){
+								stats.rescheduled++;
+							}else{
+								cohort.set(i, null);
+								event.cohortIndex = -1;
+								inFlight--;
+							}
+						}
 					}
-					ArrayList<Agent> copy = new ArrayList<Agent>();
-					while(iter.hasNext()){
-						copy.add(iter.next());
+				}finally{
+					requeueCohort();
+					if(flightEvent != null)TimeEvents.endCohort(flightEvent, cohortTick, cohortSize, agentsDispatched - agentsBefore);
+				}
+				// Grab the next event from the schedule
+				event = scheduleQueue.peek();
+			}
+			return true;
+		}
+		/*
+		 * Dispatch a single event to its agents (or the observer), returns false if the run was stopped part way through.
+		 */
+		private boolean performEvent(LogoEvent event, ExtensionContext extcontext, Object[] emptyArgs) throws ExtensionException, LogoException {
+			if(event.agent != null){
+				if(log.isTrace())log.trace("single agent");
+				if(event.agent.id == -1){
+					// the agent has died since the event was scheduled
+					stats.skippedDeadAgents++;
+					return true;
+				}
+				if(extcontext.nvmContext().stopping)return false;
+				org.nlogo.nvm.Context nvmContext = dispatchContext(extcontext, event.agent);
+				runTask(event, nvmContext, emptyArgs);
+				if(nvmContext.stopping)return false;
+			}else if(event.coalesced != null){
+				if(log.isTrace())log.trace("coalesced agents");
+				// The array belongs to the event, so unlike an agentset the task can't change it under us
+				for(int i = 0; i < event.coalescedCount; i++){
+					Agent theAgent = event.coalesced[i];
+					if(theAgent == null)continue; // taken out by time:unschedule-agent
+					if(theAgent.id == -1){
+						stats.skippedDeadAgents++;
+						continue;
 					}
-					for(Agent theAgent : copy){
-						if(theAgent == null || theAgent.id == -1)continue;
-						org.nlogo.nvm.Context nvmContext = new org.nlogo.nvm.Context(extcontext.nvmContext().job,theAgent,
-								extcontext.nvmContext().ip,extcontext.nvmContext().activation,extcontext.workspace());
-						if(extcontext.nvmContext().stopping)return;
-						event.task.perform(nvmContext, emptyArgs);
-						if(nvmContext.stopping)return;
+					if(extcontext.nvmContext().stopping)return false;
+					org.nlogo.nvm.Context nvmContext = dispatchContext(extcontext, theAgent);
+					runTask(event, nvmContext, emptyArgs);
+					if(nvmContext.stopping)return false;
+				}
+			}else if(event.agents == null){
+				if(log.isTrace())log.trace("observer");
+				runTask(event, dispatchContext(extcontext, (org.nlogo.agent.Agent)extcontext.getAgent().world().observer()), emptyArgs);
+			}else{
+				AgentIterator iter = null;
+				boolean shuffleInPlace = event.shuffleAgentSet && canShuffleInPlace(event.agents);
+				if(event.shuffleAgentSet && !shuffleInPlace){
+					iter = event.agents.shufflerator(extcontext.nvmContext().job.random);
+				}else{
+					iter = event.agents.iterator();
+				}
+				// Copy the agents before running any of them, the task may change the membership of the agentset
+				int count = 0;
+				while(iter.hasNext()){
+					if(count == agentBuffer.length)agentBuffer = Arrays.copyOf(agentBuffer, agentBuffer.length * 2);
+					agentBuffer[count++] = iter.next();
+				}
+				if(shuffleInPlace)shuffle(agentBuffer, count, extcontext.nvmContext().job.random);
+				try{
+					for(int i = 0; i < count; i++){
+						Agent theAgent = agentBuffer[i];
+						if(theAgent == null || theAgent.id == -1){
+							stats.skippedDeadAgents++;
+							continue;
+						}
+						if(extcontext.nvmContext().stopping)return false;
+						org.nlogo.nvm.Context nvmContext = dispatchContext(extcontext, theAgent);
+						runTask(event, nvmContext, emptyArgs);
+						if(nvmContext.stopping)return false;
 					}
+				}finally{
+					Arrays.fill(agentBuffer, 0, count, null);
 				}
-				// Remove the current event as is from the schedule
-				scheduleTree.remove(event);
-
-				// Reschedule the event if necessary
-				event.reschedule(this);
-
-				// Grab the next event from the schedule
-				event = scheduleTree.isEmpty() ? null : scheduleTree.first();
 			}
-			if(untilTick!=null && untilTick < Double.MAX_VALUE && untilTick > getTickCounter(extcontext).ticks()) getTickCounter(extcontext).tick(untilTick-getTickCounter(extcontext).ticks());
+			return true;
+		}
+		/*
+		 * A shufflerator copies the whole agentset before shuffling the copy, which for a large agentset is a large
+		 * allocation every time a shuffled event fires.  Instead the agents are shuffled in place in agentBuffer, with the
+		 * same draws from the random number generator, so a model gets exactly the same order either way.  That only holds
+		 * if the shufflerator's copy holds the same agents as the agentset's iterator, which is the case for breeds and the
+		 * like (dead agents leave them at once) and for patches (which never die), but not for an agentset built by e.g.
+		 * "with", which keeps its dead turtles and links until it is discarded.
+		 */
+		static boolean canShuffleInPlace(AgentSet agents){
+			return agents instanceof TreeAgentSet || agents.kind() == AgentKindJ.Patch();
+		}
+		/*
+		 * Shuffles the first count agents the way a shufflerator does, see canShuffleInPlace.
+		 */
+		static void shuffle(Agent[] agents, int count, MersenneTwisterFast random){
+			for(int i = 0; i < count - 1; i++){
+				int r = i + random.nextInt(count - i);
+				Agent swap = agents[r];
+				agents[r] = agents[i];
+				agents[i] = swap;
+			}
+		}
+		private void runTask(LogoEvent event, org.nlogo.nvm.Context nvmContext, Object[] emptyArgs){
+			agentsDispatched++;
+			if(trace == null){
+				event.task.perform(nvmContext, emptyArgs);
+			}else{
+				long start = System.nanoTime();
+				event.task.perform(nvmContext, emptyArgs);
+				trace.record(event, nvmContext.agent, System.nanoTime() - start);
+			}
+		}
+		/*
+		 * Returns the nvm Context used to run a task for the given agent.  A single Context is recycled for every agent
+		 * the schedule dispatches to, it is only replaced when the job running the schedule changes.
+		 */
+		private org.nlogo.nvm.Context dispatchContext(ExtensionContext extcontext, Agent agent){
+			org.nlogo.nvm.Context caller = extcontext.nvmContext();
+			if(recycledContext == null || recycledContext.job != caller.job){
+				recycledContext = new org.nlogo.nvm.Context(caller.job, agent, caller.ip, caller.activation, extcontext.workspace());
+			}else{
+				recycledContext.agent = agent;
+				recycledContext.agentBit = agent.agentBit();
+				recycledContext.ip = caller.ip;
+				recycledContext.activation = caller.activation;
+				recycledContext.stopping = false;
+				recycledContext.finished = false;
+			}
+			return recycledContext;
+		}
+		/*
+		 * Put the events of the cohort that are still pending back into the queue, i.e. the repeating events that were
+		 * dispatched (already advanced to their next tick) and any events left over if the run was interrupted.
+		 */
+		private void requeueCohort(){
+			// Squeeze out the events that are done with, then put the rest back in one go like addBatch
+			int kept = 0;
+			for(int i = 0; i < cohort.size(); i++){
+				LogoEvent event = cohort.get(i);
+				if(event != null){
+					event.cohortIndex = -1;
+					cohort.set(kept++, event);
+				}
+			}
+			cohort.subList(kept, cohort.size()).clear();
+			if(kept > 0)scheduleQueue.addAll(cohort);
+			cohort.clear();
+			inFlight = 0;
 		}
 		public LogoTime getCurrentTime() throws ExtensionException{
 			if(!this.isAnchored())return null;
-			if(TimeExtension.debug)TimeUtils.printToConsole(TimeExtension.context, "current time is: " + this.timeAnchor.plus(this.tickType,getTickCounter().ticks() / this.tickValue));
+			if(log.isTrace())log.trace("current time is: " + this.timeAnchor.plus(this.tickType,getTickCounter().ticks() / this.tickValue));
 			return this.timeAnchor.plus(this.tickType,getTickCounter().ticks() / this.tickValue);
 		}
 		public String dump(boolean readable, boolean exporting, boolean reference) {
@@ -210,9 +720,13 @@ public class LogoSchedule implements ExtensionObject{
 			}
 			if (!(reference && exporting)) {
 				buf.append(" [ ");
-				java.util.Iterator<LogoEvent> iter = scheduleTree.iterator();
-				while(iter.hasNext()){
-					buf.append(((LogoEvent)iter.next()).dump(true, true, true));
+				ArrayList<LogoEvent> pending = new ArrayList<LogoEvent>(Arrays.asList(scheduleQueue.toSortedArray()));
+				for(LogoEvent event : cohort){
+					if(event != null)pending.add(event);
+				}
+				Collections.sort(pending, new LogoEventComparator());
+				for(LogoEvent event : pending){
+					buf.append(event.dump(true, true, true));
 					buf.append("\n");
 				}
 				buf.append("]");
@@ -228,7 +742,67 @@ public class LogoSchedule implements ExtensionObject{
 		public boolean recursivelyEqual(Object arg0) {
 			return equals(arg0);
 		}
+		public int size() {
+			return scheduleQueue.size() + inFlight;
+		}
 		public void clear() {
-			scheduleTree.clear();
+			scheduleQueue.clear();
+			coalesceTarget = null;
+			agentIndex.clear();
+			for(LogoEvent event : cohort){
+				if(event != null)event.cohortIndex = -1;
+			}
+			Collections.fill(cohort, null);
+			inFlight = 0;
+		}
+		/*
+		 * Replaces everything on the schedule and its anchor, used by time:load-schedule and schedule templates.  The
+		 * events must have been checked already, they are added in one go without going through addEvent.
+		 */
+		void restore(LogoTime timeAnchor, Double tickValue, PeriodType tickType, long nextEvent, ArrayList<LogoEvent> events){
+			clear();
+			if(timeAnchor != null){
+				anchorSchedule(timeAnchor, tickValue, tickType);
+			}else{
+				this.timeAnchor = null;
+				this.tickType = null;
+				this.tickValue = null;
+				this.calendarOffsets.clear();
+			}
+			this.nextEvent = nextEvent;
+			lastEvent = null;
+			lastEventMerged = false;
+			if(!events.isEmpty()){
+				scheduleQueue.addAll(events);
+				for(LogoEvent event : events){
+					indexEvent(event);
+				}
+				stats.enqueued += events.size();
+				stats.recordDepth(size());
+			}
+		}
+		/*
+		 * The repeat interval and the tick an offset is taken from, compared bit for bit.
+		 */
+		static final class CalendarOffsetKey {
+			final PeriodType periodType;
+			final double interval;
+			final double tick;
+
+			CalendarOffsetKey(PeriodType periodType, double interval, double tick){
+				this.periodType = periodType;
+				this.interval = interval;
+				this.tick = tick;
+			}
+			public boolean equals(Object obj) {
+				if(!(obj instanceof CalendarOffsetKey))return false;
+				CalendarOffsetKey other = (CalendarOffsetKey)obj;
+				return periodType == other.periodType && Double.doubleToLongBits(interval) == Double.doubleToLongBits(other.interval)
+						&& Double.doubleToLongBits(tick) == Double.doubleToLongBits(other.tick);
+			}
+			public int hashCode() {
+				long bits = Double.doubleToLongBits(interval) * 31 + Double.doubleToLongBits(tick);
+				return periodType.ordinal() * 31 + (int)(bits ^ (bits >>> 32));
+			}
 		}
-	}
\ No newline at end of file
+	}
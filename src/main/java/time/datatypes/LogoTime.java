@@ -1,6 +1,6 @@
 package time.datatypes;
 
-import org.joda.time.DateTime;
+import org.joda.time.Chronology;
 import org.joda.time.DateTimeFieldType;
 import org.joda.time.Duration;
 import org.joda.time.LocalDate;
@@ -24,41 +24,55 @@ public class LogoTime implements ExtensionObject{
 	public LocalDateTime 	datetime = null;
 	public LocalDate 		date	 = null;
 	public MonthDay 		monthDay = null;
+	// The time as milliseconds since 1970-01-01 with its fields read as UTC (DAY times are placed in the year 2000), kept
+	// in step with datetime/date/monthDay so that comparisons and fixed length differences are plain arithmetic
+	long					millis;
+	// Shared with every other time made with the same format, see TimeFormats; null for the default format of the type
 	private DateTimeFormatter customFmt = null;
-	private DateTimeFormatter defaultFmt = null;
-	private Boolean 		isAnchored = false;
-	private Double 			tickValue;
-	private PeriodType 		tickType;
-	private LocalDateTime 	anchorDatetime;
-	private LocalDate 		anchorDate;
-	private MonthDay 		anchorMonthDay;
-	private World 			world;
+	private TickAnchor		anchor = null; // set by time:anchor-to-ticks
+	private static final Chronology UTC = ISOChronology.getInstanceUTC();
 
 	public LogoTime(LogoTime time) throws ExtensionException {
-		this(time.show(time.defaultFmt));
+		this(time.show(TimeFormats.defaultFor(time.dateType)));
 	}
 	public LogoTime(LocalDateTime dt) {
 		this.datetime = dt;
-		this.defaultFmt = DateTimeFormat.forPattern("yyyy-MM-dd HH:mm:ss.SSS");
 		this.dateType = DateType.DATETIME;
+		updateMillis();
 	}
 	public LogoTime(LocalDate dt) {
 		this.date = dt;
-		this.defaultFmt = DateTimeFormat.forPattern("yyyy-MM-dd");
 		this.dateType = DateType.DATE;
+		updateMillis();
 	}
 	public LogoTime(MonthDay dt) {
 		this.monthDay = dt;
-		this.defaultFmt = DateTimeFormat.forPattern("MM-dd");
 		this.dateType = DateType.DAY;
+		updateMillis();
 	}
 	public LogoTime(String dateString) throws ExtensionException {
 		this(dateString,null);
 	}
 	public LogoTime(String dateString, String customFormat) throws ExtensionException {
-		// First we parse the string to determine the date type
 		if(customFormat == null){
-			dateString = parseDateString(dateString);
+			// Strings in one of the forms listed at parseDateString are read in one pass, anything else (including
+			// every illegal string) goes through parseDateString and Joda's parser so it is read or rejected as before
+			if(!parseDateStringFast(dateString)){
+				// First we parse the string to determine the date type
+				dateString = parseDateString(dateString);
+				// Now create the joda time object
+				switch(this.dateType){
+				case DATETIME:
+					this.datetime = (dateString.length() == 0 || dateString.equals("now")) ? new LocalDateTime() : new LocalDateTime(dateString);
+					break;
+				case DATE:
+					this.date = new LocalDate(dateString);
+					break;
+				case DAY:
+					this.monthDay = (new MonthDay()).parse(dateString, TimeFormats.DAY);
+					break;
+				}
+			}
 		}else{
 			if(customFormat.indexOf('H') >= 0 ||
 					customFormat.indexOf('h') >= 0 || 
@@ -70,33 +84,6 @@ public class LogoTime implements ExtensionObject{
 			}else{
 				this.dateType = DateType.DAY;
 			}
-		}
-		// Now initialize the defaultFmt
-		switch(this.dateType){
-		case DATETIME:
-			this.defaultFmt = DateTimeFormat.forPattern("yyyy-MM-dd HH:mm:ss.SSS");
-			break;
-		case DATE:
-			this.defaultFmt = DateTimeFormat.forPattern("yyyy-MM-dd");
-			break;
-		case DAY:
-			this.defaultFmt = DateTimeFormat.forPattern("MM-dd");
-			break;
-		}
-		// Now create the joda time object
-		if(customFormat == null){
-			switch(this.dateType){
-			case DATETIME:
-				this.datetime = (dateString.length() == 0 || dateString.equals("now")) ? new LocalDateTime() : new LocalDateTime(dateString);
-				break;
-			case DATE:
-				this.date = new LocalDate(dateString);
-				break;
-			case DAY:
-				this.monthDay = (new MonthDay()).parse(dateString, this.defaultFmt);
-				break;
-			}
-		}else{
 			this.customFmt = DateTimeFormat.forPattern(customFormat);
 			switch(this.dateType){
 			case DATETIME:
@@ -112,37 +99,31 @@ public class LogoTime implements ExtensionObject{
 			//if(debug)printToConsole(getContext(), customFormat);
 			//if(debug)printToConsole(getContext(), dateString);
 		}
+		updateMillis();
 	}
-	int compareTo(LogoTime that){
-		switch(this.dateType){
-		case DATETIME:
-			return this.datetime.compareTo(that.datetime);
-		case DATE:
-			return this.date.compareTo(that.date);
-		case DAY:
-			return this.monthDay.compareTo(that.monthDay);
-		}
-		return -999;
-	}
-	public Boolean isCloserToAThanB(LogoTime timeA, LogoTime timeB){
-		DateTime refDateTime = new DateTime(ISOChronology.getInstanceUTC());
-		Long millisToA = null, millisToB = null;
-
+	/*
+	 * Recomputes millis from the joda field of the time's type, which must be called whenever that field changes.  This
+	 * is the same instant the joda field converts to in UTC, so differences between times are exactly what Joda's
+	 * Duration gave before, without the daylight saving gaps of the default time zone.
+	 */
+	private void updateMillis(){
 		switch(this.dateType){
 		case DATETIME:
-			millisToA = Math.abs((new Duration(timeA.datetime.toDateTime(refDateTime),this.datetime.toDateTime(refDateTime))).getMillis());
-			millisToB = Math.abs((new Duration(timeB.datetime.toDateTime(refDateTime),this.datetime.toDateTime(refDateTime))).getMillis());
+			this.millis = UTC.getDateTimeMillis(datetime.getYear(), datetime.getMonthOfYear(), datetime.getDayOfMonth(), datetime.getMillisOfDay());
 			break;
 		case DATE:
-			millisToA = Math.abs((new Duration(timeA.date.toDateTime(refDateTime),this.date.toDateTime(refDateTime))).getMillis());
-			millisToB = Math.abs((new Duration(timeB.date.toDateTime(refDateTime),this.date.toDateTime(refDateTime))).getMillis());
+			this.millis = UTC.getDateTimeMillis(date.getYear(), date.getMonthOfYear(), date.getDayOfMonth(), 0);
 			break;
 		case DAY:
-			millisToA = Math.abs((new Duration(timeA.monthDay.toLocalDate(2000).toDateTime(refDateTime),this.monthDay.toLocalDate(2000).toDateTime(refDateTime))).getMillis());
-			millisToB = Math.abs((new Duration(timeB.monthDay.toLocalDate(2000).toDateTime(refDateTime),this.monthDay.toLocalDate(2000).toDateTime(refDateTime))).getMillis());
+			this.millis = UTC.getDateTimeMillis(2000, monthDay.getMonthOfYear(), monthDay.getDayOfMonth(), 0);
 			break;
 		}
-		return millisToA < millisToB;
+	}
+	int compareTo(LogoTime that){
+		return Long.compare(this.millis, that.millis);
+	}
+	public boolean isCloserToAThanB(LogoTime timeA, LogoTime timeB){
+		return Math.abs(this.millis - timeA.millis) < Math.abs(this.millis - timeB.millis);
 	}
 	/* 
 	 * parseDateString
@@ -178,6 +159,82 @@ public class LogoTime implements ExtensionObject{
 	 */
 	//
 	//
+	/*
+	 * Reads a string in one of the legit forms above (except those giving fewer than three digits of millis) straight
+	 * into the joda field of its type, without building the padded string that parseDateString hands to Joda.  Returns
+	 * false without changing anything if the string isn't in one of those forms or its fields are out of range, so
+	 * that parseDateString can accept or reject it.
+	 */
+	private boolean parseDateStringFast(String s){
+		int len = s.length();
+		int pos = digitsEnd(s, 0);
+		if(pos == 1 || pos == 2){ // a DAY
+			if(pos == len || !isDateSeparator(s.charAt(pos)))return false;
+			int dayEnd = digitsEnd(s, pos + 1);
+			if(dayEnd != len || dayEnd - pos - 1 < 1 || dayEnd - pos - 1 > 2)return false;
+			try{
+				this.monthDay = new MonthDay(number(s, 0, pos), number(s, pos + 1, dayEnd));
+			}catch(IllegalArgumentException e){
+				return false;
+			}
+			this.dateType = DateType.DAY;
+			return true;
+		}
+		if(pos != 4 || pos == len || !isDateSeparator(s.charAt(pos)))return false;
+		int year = number(s, 0, 4);
+		int monthEnd = digitsEnd(s, 5);
+		if(monthEnd - 5 < 1 || monthEnd - 5 > 2 || monthEnd == len || !isDateSeparator(s.charAt(monthEnd)))return false;
+		int month = number(s, 5, monthEnd);
+		int dayEnd = digitsEnd(s, monthEnd + 1);
+		if(dayEnd - monthEnd - 1 < 1 || dayEnd - monthEnd - 1 > 2)return false;
+		int day = number(s, monthEnd + 1, dayEnd);
+		try{
+			if(dayEnd == len){
+				this.date = new LocalDate(year, month, day);
+				this.dateType = DateType.DATE;
+				return true;
+			}
+			if(s.charAt(dayEnd) != 'T' && s.charAt(dayEnd) != ' ')return false;
+			int hourEnd = digitsEnd(s, dayEnd + 1);
+			if(hourEnd - dayEnd - 1 < 1 || hourEnd - dayEnd - 1 > 2)return false;
+			int hour = number(s, dayEnd + 1, hourEnd), minute = 0, second = 0, millis = 0;
+			pos = hourEnd;
+			if(pos < len){
+				if(s.charAt(pos) != ':' || digitsEnd(s, pos + 1) != pos + 3)return false;
+				minute = number(s, pos + 1, pos + 3);
+				pos += 3;
+			}
+			if(pos < len){
+				if(s.charAt(pos) != ':' || digitsEnd(s, pos + 1) != pos + 3)return false;
+				second = number(s, pos + 1, pos + 3);
+				pos += 3;
+			}
+			if(pos < len){
+				if(s.charAt(pos) != '.' || digitsEnd(s, pos + 1) != pos + 4 || pos + 4 != len)return false;
+				millis = number(s, pos + 1, pos + 4);
+			}
+			this.datetime = new LocalDateTime(year, month, day, hour, minute, second, millis);
+			this.dateType = DateType.DATETIME;
+			return true;
+		}catch(IllegalArgumentException e){
+			return false;
+		}
+	}
+	private static int digitsEnd(String s, int start){
+		int end = start;
+		while(end < s.length() && s.charAt(end) >= '0' && s.charAt(end) <= '9')end++;
+		return end;
+	}
+	private static int number(String s, int start, int end){
+		int value = 0;
+		for(int i = start; i < end; i++){
+			value = value * 10 + (s.charAt(i) - '0');
+		}
+		return value;
+	}
+	private static boolean isDateSeparator(char c){
+		return c == '-' || c == '/';
+	}
 	String parseDateString(String dateString) throws ExtensionException{
 		dateString = dateString.replace('/', '-').replace(' ', 'T').trim();
 		int len = dateString.length();
@@ -234,23 +291,21 @@ public class LogoTime implements ExtensionObject{
 		}
 		return dateString;
 	}
-	public void setAnchor(Double tickCount, PeriodType tickType, World world) throws ExtensionException{
+	public void setAnchor(Double tickCount, PeriodType tickType, World world, LogoSchedule schedule) throws ExtensionException{
 		if(tickType == PeriodType.DAYOFWEEK)throw new ExtensionException(tickType.toString() + " type is not a supported tick type");
-		this.isAnchored = true;
-		this.tickValue = tickCount;
-		this.tickType = tickType;
+		LogoTime origin = null;
 		switch(this.dateType){
 		case DATETIME:
-			this.anchorDatetime = new LocalDateTime(this.datetime);
+			origin = new LogoTime(new LocalDateTime(this.datetime));
 			break;
 		case DATE:
-			this.anchorDate = new LocalDate(this.date);
+			origin = new LogoTime(new LocalDate(this.date));
 			break;
 		case DAY:
-			this.anchorMonthDay = new MonthDay(this.monthDay);
+			origin = new LogoTime(new MonthDay(this.monthDay));
 			break;
 		}
-		this.world = world;
+		this.anchor = schedule.tickAnchor(origin, tickType, tickCount, world);
 	}
 	public String dump(boolean arg1, boolean arg2, boolean arg3) {
 		return this.toString();
@@ -263,29 +318,22 @@ public class LogoTime implements ExtensionObject{
 		}
 		switch(this.dateType){
 		case DATETIME:
-			return datetime.toString(this.customFmt == null ? this.defaultFmt : this.customFmt);
+			return datetime.toString(this.customFmt == null ? TimeFormats.defaultFor(this.dateType) : this.customFmt);
 		case DATE:
-			return date.toString(this.customFmt == null ? this.defaultFmt : this.customFmt);
+			return date.toString(this.customFmt == null ? TimeFormats.defaultFor(this.dateType) : this.customFmt);
 		case DAY:
-			return monthDay.toString(this.customFmt == null ? this.defaultFmt : this.customFmt);
+			return monthDay.toString(this.customFmt == null ? TimeFormats.defaultFor(this.dateType) : this.customFmt);
 		}
 		return "";
 	}
 
 	public void updateFromTick() throws ExtensionException {
-		if(!this.isAnchored)return;
-
-		switch(this.dateType){
-		case DATETIME:
-			this.datetime = this.plus(this.anchorDatetime,this.tickType, this.world.ticks()*this.tickValue).datetime;
-			break;
-		case DATE:
-			this.date = this.plus(this.anchorDate,this.tickType, this.world.ticks()*this.tickValue).date;
-			break;
-		case DAY:
-			this.monthDay = this.plus(this.anchorMonthDay,this.tickType, this.world.ticks()*this.tickValue).monthDay;
-			break;
-		}
+		if(this.anchor == null)return;
+		LogoTime current = this.anchor.current();
+		this.datetime = current.datetime;
+		this.date = current.date;
+		this.monthDay = current.monthDay;
+		this.millis = current.millis;
 	}
 	public String getExtensionName() {
 		return "time";
@@ -509,27 +557,11 @@ public class LogoTime implements ExtensionObject{
 	}
 	public boolean isBefore(LogoTime timeB)throws ExtensionException{
 		if(this.dateType != timeB.dateType)throw new ExtensionException("time comparisons only work if the LogoTime's are the same variety, but you called with a "+this.dateType.toString()+" and a "+timeB.dateType.toString());
-		switch(this.dateType){
-		case DATETIME:
-			return this.datetime.isBefore(timeB.datetime);
-		case DATE:
-			return this.date.isBefore(timeB.date);
-		case DAY:
-			return this.monthDay.isBefore(timeB.monthDay);
-		}
-		return true;
+		return this.millis < timeB.millis;
 	}
 	public boolean isEqual(LogoTime timeB)throws ExtensionException{
 		if(this.dateType != timeB.dateType)throw new ExtensionException("time comparisons only work if the LogoTime's are the same variety, but you called with a "+this.dateType.toString()+" and a "+timeB.dateType.toString());
-		switch(this.dateType){
-		case DATETIME:
-			return this.datetime.isEqual(timeB.datetime);
-		case DATE:
-			return this.date.isEqual(timeB.date);
-		case DAY:
-			return this.monthDay.isEqual(timeB.monthDay);
-		}
-		return true;
+		return this.millis == timeB.millis;
 	}
 	public boolean isBetween(LogoTime timeA, LogoTime timeB)throws ExtensionException{
 		if(!timeA.isBefore(timeB)){
@@ -539,20 +571,19 @@ public class LogoTime implements ExtensionObject{
 		}
 		if(this.dateType != timeA.dateType || this.dateType != timeB.dateType)throw new ExtensionException("time comparisons only work if the LogoTime's are the same variety, but you called with a "+
 				this.dateType.toString()+", a "+timeA.dateType.toString()+", and a "+timeB.dateType.toString());
-		switch(this.dateType){
-		case DATETIME:
-			return ((this.datetime.isAfter(timeA.datetime) && this.datetime.isBefore(timeB.datetime)) || this.datetime.isEqual(timeA.datetime) || this.datetime.isEqual(timeB.datetime));
-		case DATE:
-			return ((this.date.isAfter(timeA.date) && this.date.isBefore(timeB.date)) || this.date.isEqual(timeA.date) || this.date.isEqual(timeB.date));
-		case DAY:
-			return ((this.monthDay.isAfter(timeA.monthDay) && this.monthDay.isBefore(timeB.monthDay)) || this.monthDay.isEqual(timeA.monthDay) || this.monthDay.isEqual(timeB.monthDay));
-		}
-		return true;
+		return this.millis >= timeA.millis && this.millis <= timeB.millis;
 	}
 	public Double getDifferenceBetween(PeriodType pType, LogoTime endTime)throws ExtensionException{
+		return differenceBetween(pType, endTime);
+	}
+	/*
+	 * getDifferenceBetween without boxing the result, for the scheduler and time series lookups.  Differences in fixed
+	 * length periods (MILLI to WEEK) are worked out from millis alone and allocate nothing.
+	 */
+	double differenceBetween(PeriodType pType, LogoTime endTime)throws ExtensionException{
 		if(this.dateType != endTime.dateType)throw new ExtensionException("time comparisons only work if the LogoTimes are the same variety, but you called with a "+
 				this.dateType.toString()+" and a "+endTime.dateType.toString());
-		Double durVal = 1.0;
+		double durVal = 1.0;
 		switch(pType){
 		case YEAR:
 			switch(this.dateType){
@@ -584,15 +615,7 @@ public class LogoTime implements ExtensionObject{
 		case SECOND:
 			durVal /= 1000.0;
 		case MILLI:
-			DateTime refDateTime = new DateTime(ISOChronology.getInstanceUTC());
-			switch(this.dateType){
-			case DATETIME:
-				return durVal * (new Duration(this.datetime.toDateTime(refDateTime),endTime.datetime.toDateTime(refDateTime))).getMillis();
-			case DATE:
-				return durVal * (new Duration(this.date.toDateTime(refDateTime),endTime.date.toDateTime(refDateTime))).getMillis();
-			case DAY:
-				return durVal * (new Duration(this.monthDay.toLocalDate(2000).toDateTime(refDateTime),endTime.monthDay.toLocalDate(2000).toDateTime(refDateTime))).getMillis();
-			}
+			return durVal * (endTime.millis - this.millis);
 		default:
 			throw new ExtensionException(pType+" type is not supported by the time:difference-between primitive");
 		}
@@ -19,6 +19,7 @@ import java.util.TreeMap;
 import time.TimeEnums;
 import time.TimeEnums.GetTSMethod;
 import time.TimeEnums.PeriodType;
+import time.jfr.TimeEvents;
 
 import org.nlogo.api.ExtensionException;
 import org.nlogo.core.ExtensionObject;
@@ -97,6 +98,7 @@ public class LogoTimeSeries implements ExtensionObject{
 			parseTimeSeriesFile(filename,null,context);
 	}
 	public void parseTimeSeriesFile(String filename, String customFormat, ExtensionContext context) throws ExtensionException{
+		Object flightEvent = TimeEvents.ENABLED ? TimeEvents.beginTimeSeriesLoad() : null;
 		File dataFile;
 		if(filename.charAt(0)=='/' || filename.charAt(0)=='\\' || filename.charAt(1)==':' || context.workspace().getModelDir()==null){
 			dataFile = new File(filename);
@@ -161,6 +163,7 @@ public class LogoTimeSeries implements ExtensionObject{
 		}catch (IOException e){
 			throw new ExtensionException(e.getMessage());
 		}
+		if(flightEvent != null)TimeEvents.endTimeSeriesLoad(flightEvent, dataFile.getPath(), numRows, dataFile.length());
 	}
 	public Object getByTime(LogoTime time, String columnName, GetTSMethod getMethod) throws ExtensionException{
 		ArrayList<String> columnList = new ArrayList<String>(columns.size());
@@ -172,6 +175,8 @@ public class LogoTimeSeries implements ExtensionObject{
 		}else{
 			columnList.add(columnName);
 		}
+		Object flightEvent = TimeEvents.ENABLED ? TimeEvents.beginTimeSeriesGet() : null;
+		String lookup = "hit";
 		LogoTime finalKey = null, higherKey = null, lowerKey = null;
 		if(times.get(time)!=null){
 			finalKey = time;
@@ -180,17 +185,21 @@ public class LogoTimeSeries implements ExtensionObject{
 			lowerKey = times.lowerKey(time);
 			if(higherKey == null){
 				finalKey = lowerKey;
+				lookup = "out-of-range";
 			}else if(lowerKey == null){
 				finalKey = higherKey;
+				lookup = "out-of-range";
 			}else{
 				switch(getMethod){
 				case EXACT:
 					throw new ExtensionException("The LogoTime "+time.dump(false, false, false)+" does not exist in the time series.");
 				case NEAREST:
 					finalKey = time.isCloserToAThanB(lowerKey, higherKey) ? lowerKey : higherKey;
+					lookup = "nearest";
 					break;
 				case LINEAR_INTERP:
 					finalKey = time;
+					lookup = "interpolate";
 					break;
 				}
 			}
@@ -201,11 +210,12 @@ public class LogoTimeSeries implements ExtensionObject{
 				if(columns.get(colName).data.get(0) instanceof String)throw new ExtensionException("Cannot interpolate between string values, use time:get instead.");
 				resultList.add( (Double)columns.get(colName).data.get(times.get(lowerKey).dataIndex) + 
 					((Double)columns.get(colName).data.get(times.get(higherKey).dataIndex) - (Double)columns.get(colName).data.get(times.get(lowerKey).dataIndex)) *
-					lowerKey.getDifferenceBetween(PeriodType.MILLI, time) / lowerKey.getDifferenceBetween(PeriodType.MILLI, higherKey) );
+					lowerKey.differenceBetween(PeriodType.MILLI, time) / lowerKey.differenceBetween(PeriodType.MILLI, higherKey) );
 			}else{
 				resultList.add(columns.get(colName).data.get(times.get(finalKey).dataIndex));
 			}
 		}
+		if(flightEvent != null)TimeEvents.endTimeSeriesGet(flightEvent, getMethod.toString(), lookup, columnList.size());
 		if(resultList.size()==1){
 			return resultList.get(0);
 		}else{
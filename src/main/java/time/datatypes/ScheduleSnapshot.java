@@ -0,0 +1,354 @@
+package time.datatypes;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.nlogo.agent.Agent;
+import org.nlogo.agent.AgentIterator;
+import org.nlogo.agent.AgentSet;
+import org.nlogo.agent.ArrayAgentSet;
+import org.nlogo.agent.Link;
+import org.nlogo.agent.Patch;
+import org.nlogo.agent.World;
+import org.nlogo.api.Dump;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.core.AgentKind;
+import org.nlogo.core.AgentKindJ;
+import org.nlogo.core.LogoList;
+import org.nlogo.nvm.AnonymousCommand;
+
+import time.TimeEnums.PeriodType;
+
+/*
+ * ScheduleSnapshot saves the pending events and the anchor of a LogoSchedule to a binary file and loads them back,
+ * see time:save-schedule and time:load-schedule.  Agents are saved by id, so the world must be restored (e.g. with
+ * import-world) before the schedule is.  Anonymous commands can't be saved at all, the snapshot keeps their source
+ * (as given by Dump) and time:load-schedule is handed the commands to match them against.  Commands with the same
+ * source are saved as one, whatever variables they captured, and load refuses a list that holds two different commands
+ * with a source the file needs, since it can't tell which was meant.  The agentsets of whole breeds (and turtles,
+ * patches and links) are saved by name so that they keep following the breed, any other agentset is saved as its
+ * members.
+ *
+ * The file is big-endian throughout and read back through a memory map:
+ *   MAGIC, int VERSION, long id of the next event
+ *   byte 1 if anchored, then string anchor time, string tick period type, double tick value
+ *   int number of tasks, then a string per task
+ *   int number of events, then per event:
+ *     long id, double tick, int task index, double repeat interval (NaN if none), byte repeat period type ordinal
+ *     (-1 if none), byte shuffle, byte target type, then for the target:
+ *       OBSERVER  nothing
+ *       AGENT     byte agent kind, long id
+ *       BREED     byte agent kind, string breed name
+ *       MEMBERS   byte agent kind, int count, long id per member
+ *       COALESCED as MEMBERS, for single agent events merged by time:set-coalescing (version 2 on)
+ * Strings are an int length followed by UTF-8 bytes.
+ */
+class ScheduleSnapshot {
+	static final byte[] MAGIC = {'N','L','T','I','M','E','S','C'};
+	static final int VERSION = 2;
+	static final byte OBSERVER = 0;
+	static final byte AGENT = 1;
+	static final byte BREED = 2;
+	static final byte MEMBERS = 3;
+	static final byte COALESCED = 4;
+	static final byte TURTLE = 1;
+	static final byte PATCH = 2;
+	static final byte LINK = 3;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	static void save(LogoSchedule schedule, File file, World world) throws ExtensionException{
+		if(schedule.dispatching)throw new ExtensionException("time:save-schedule cannot be used while the schedule is dispatching events");
+		LogoEvent[] events = schedule.scheduleQueue.toSortedArray();
+		// Number the tasks, the same anonymous command is usually shared by many events
+		HashMap<String,Integer> taskIndex = new HashMap<String,Integer>();
+		ArrayList<String> tasks = new ArrayList<String>();
+		int[] eventTasks = new int[events.length];
+		for(int i = 0; i < events.length; i++){
+			String source = Dump.logoObject(events[i].task);
+			Integer index = taskIndex.get(source);
+			if(index == null){
+				index = tasks.size();
+				taskIndex.put(source, index);
+				tasks.add(source);
+			}
+			eventTasks[i] = index;
+		}
+		try{
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+			try{
+				out.write(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(schedule.nextEvent);
+				if(schedule.isAnchored()){
+					out.writeByte(1);
+					writeString(out, schedule.timeAnchor.dump(false, false, false));
+					writeString(out, schedule.tickType.toString());
+					out.writeDouble(schedule.tickValue);
+				}else{
+					out.writeByte(0);
+				}
+				out.writeInt(tasks.size());
+				for(String source : tasks){
+					writeString(out, source);
+				}
+				int count = 0;
+				for(LogoEvent event : events){
+					// An event for agents that have all died would be skipped anyway
+					if(!LogoSchedule.targetsOnlyDeadAgents(event))count++;
+				}
+				out.writeInt(count);
+				for(int i = 0; i < events.length; i++){
+					LogoEvent event = events[i];
+					if(LogoSchedule.targetsOnlyDeadAgents(event))continue;
+					out.writeLong(event.id);
+					out.writeDouble(event.tick);
+					out.writeInt(eventTasks[i]);
+					out.writeDouble(event.repeatInterval == null ? Double.NaN : event.repeatInterval);
+					out.writeByte(event.repeatIntervalPeriodType == null ? -1 : event.repeatIntervalPeriodType.ordinal());
+					out.writeByte(event.shuffleAgentSet != null && event.shuffleAgentSet ? 1 : 0);
+					if(event.agent != null){
+						out.writeByte(AGENT);
+						out.writeByte(kindOf(event.agent));
+						out.writeLong(event.agent.id);
+					}else if(event.coalesced != null){
+						// Kept apart from MEMBERS so the agents are indexed again for time:unschedule-agent when loaded
+						ArrayList<Agent> members = liveCoalesced(event);
+						out.writeByte(COALESCED);
+						out.writeByte(kindOf(members.get(0)));
+						out.writeInt(members.size());
+						for(Agent member : members){
+							out.writeLong(member.id);
+						}
+					}else if(event.agents == null){
+						out.writeByte(OBSERVER);
+					}else{
+						String breed = breedName(event.agents, world);
+						if(breed != null){
+							out.writeByte(BREED);
+							out.writeByte(kindOf(event.agents.kind()));
+							writeString(out, breed);
+						}else{
+							ArrayList<Agent> members = new ArrayList<Agent>(event.agents.count());
+							for(AgentIterator iter = event.agents.iterator(); iter.hasNext();){
+								members.add(iter.next());
+							}
+							out.writeByte(MEMBERS);
+							out.writeByte(members.isEmpty() ? kindOf(event.agents.kind()) : kindOf(members.get(0)));
+							out.writeInt(members.size());
+							for(Agent member : members){
+								out.writeLong(member.id);
+							}
+						}
+					}
+				}
+			}finally{
+				out.close();
+			}
+		}catch(IOException e){
+			throw new ExtensionException("time:save-schedule could not write "+file+": "+e.getMessage());
+		}
+		if(schedule.log.isDebug())schedule.log.debug("saved "+events.length+" events to "+file);
+	}
+	/*
+	 * Replaces the events and the anchor of the schedule with those in the file.  The whole file is read before the
+	 * schedule is touched, so the schedule is left as it was if anything is wrong with it.
+	 */
+	static void load(LogoSchedule schedule, File file, LogoList taskList, World world) throws ExtensionException{
+		if(schedule.dispatching)throw new ExtensionException("time:load-schedule cannot be used while the schedule is dispatching events");
+		HashMap<String,AnonymousCommand> suppliedTasks = new HashMap<String,AnonymousCommand>();
+		// Sources given for more than one command, which only matter if the file has events for them
+		HashSet<String> ambiguousTasks = new HashSet<String>();
+		for(Object task : taskList.toJava()){
+			if(!(task instanceof AnonymousCommand))throw new ExtensionException("time:load-schedule expecting a list of anonymous commands as the second argument, found this instead: "+Dump.logoObject(task));
+			String source = Dump.logoObject(task);
+			AnonymousCommand supplied = suppliedTasks.get(source);
+			if(supplied == null){
+				suppliedTasks.put(source, (AnonymousCommand)task);
+			}else if(supplied != task){
+				ambiguousTasks.add(source);
+			}
+		}
+		ByteBuffer in;
+		try{
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try{
+				in = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			}finally{
+				raf.close();
+			}
+		}catch(IOException e){
+			throw new ExtensionException("time:load-schedule could not read "+file+": "+e.getMessage());
+		}
+		try{
+			byte[] magic = new byte[MAGIC.length];
+			in.get(magic);
+			for(int i = 0; i < MAGIC.length; i++){
+				if(magic[i] != MAGIC[i])throw new ExtensionException("time:load-schedule "+file+" is not a schedule saved by time:save-schedule");
+			}
+			int version = in.getInt();
+			if(version < 1 || version > VERSION)throw new ExtensionException("time:load-schedule "+file+" is a version "+version+" snapshot, expecting version "+VERSION+" or earlier");
+			long nextEvent = in.getLong();
+			LogoTime timeAnchor = null;
+			PeriodType tickType = null;
+			Double tickValue = null;
+			if(in.get() == 1){
+				timeAnchor = new LogoTime(readString(in));
+				tickType = PeriodType.valueOf(readString(in));
+				tickValue = in.getDouble();
+			}
+			AnonymousCommand[] tasks = new AnonymousCommand[in.getInt()];
+			for(int i = 0; i < tasks.length; i++){
+				String source = readString(in);
+				tasks[i] = suppliedTasks.get(source);
+				if(tasks[i] == null)throw new ExtensionException("time:load-schedule the schedule in "+file+" has events for "+source+", which is not in the list of anonymous commands");
+				if(ambiguousTasks.contains(source))throw new ExtensionException("time:load-schedule the list of anonymous commands has more than one command with the source "+source+", which are matched to the saved events by their source, so give only one of them");
+			}
+			PeriodType[] periodTypes = PeriodType.values();
+			HashMap<Long,Agent> links = null;
+			int count = in.getInt();
+			ArrayList<LogoEvent> events = new ArrayList<LogoEvent>(count);
+			for(int i = 0; i < count; i++){
+				long id = in.getLong();
+				double tick = in.getDouble();
+				AnonymousCommand task = tasks[in.getInt()];
+				double interval = in.getDouble();
+				byte periodType = in.get();
+				boolean shuffle = in.get() == 1;
+				Double repeatInterval = Double.isNaN(interval) ? null : interval;
+				PeriodType repeatIntervalPeriodType = periodType < 0 ? null : periodTypes[periodType];
+				byte target = in.get();
+				if(target == OBSERVER){
+					events.add(new LogoEvent(id, (AgentSet)null, task, tick, repeatInterval, repeatIntervalPeriodType, shuffle));
+				}else if(target == AGENT){
+					byte kind = in.get();
+					if(kind == LINK && links == null)links = linksById(world);
+					Agent agent = findAgent(world, kind, in.getLong(), links, "time:load-schedule");
+					events.add(new LogoEvent(id, agent, task, tick, repeatInterval, repeatIntervalPeriodType, shuffle));
+				}else if(target == BREED){
+					byte kind = in.get();
+					events.add(new LogoEvent(id, findBreed(world, kind, readString(in), "time:load-schedule"), task, tick, repeatInterval, repeatIntervalPeriodType, shuffle));
+				}else if(target == MEMBERS){
+					byte kind = in.get();
+					if(kind == LINK && links == null)links = linksById(world);
+					Agent[] members = new Agent[in.getInt()];
+					for(int m = 0; m < members.length; m++){
+						members[m] = findAgent(world, kind, in.getLong(), links, "time:load-schedule");
+					}
+					events.add(new LogoEvent(id, new ArrayAgentSet(agentKind(kind), null, members), task, tick, repeatInterval, repeatIntervalPeriodType, shuffle));
+				}else if(target == COALESCED){
+					byte kind = in.get();
+					if(kind == LINK && links == null)links = linksById(world);
+					Agent[] members = new Agent[in.getInt()];
+					if(members.length == 0)throw new ExtensionException("time:load-schedule "+file+" is corrupt, event "+id+" has no agents");
+					for(int m = 0; m < members.length; m++){
+						members[m] = findAgent(world, kind, in.getLong(), links, "time:load-schedule");
+					}
+					events.add(LogoEvent.merged(id, members, task, tick, repeatInterval, repeatIntervalPeriodType));
+				}else{
+					throw new ExtensionException("time:load-schedule "+file+" is corrupt, unknown event target "+target);
+				}
+			}
+			// Everything checked out, replace the schedule in one go
+			schedule.restore(timeAnchor, tickValue, tickType, nextEvent, events);
+			if(schedule.log.isDebug())schedule.log.debug("loaded "+events.size()+" events from "+file);
+		}catch(BufferUnderflowException e){
+			throw new ExtensionException("time:load-schedule "+file+" is truncated or corrupt");
+		}catch(IllegalArgumentException e){
+			throw new ExtensionException("time:load-schedule "+file+" is corrupt: "+e.getMessage());
+		}catch(ArrayIndexOutOfBoundsException e){
+			throw new ExtensionException("time:load-schedule "+file+" is corrupt");
+		}
+	}
+	private static void writeString(DataOutputStream out, String s) throws IOException{
+		byte[] bytes = s.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	private static String readString(ByteBuffer in){
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return new String(bytes, UTF8);
+	}
+	/*
+	 * Returns the name the agentset can be looked up by if it is all the turtles, patches or links or a whole breed,
+	 * null otherwise.
+	 */
+	static String breedName(AgentSet agents, World world){
+		if(agents == world.turtles())return "TURTLES";
+		if(agents == world.patches())return "PATCHES";
+		if(agents == world.links())return "LINKS";
+		String name = agents.printName();
+		if(name != null && (world.getBreed(name) == agents || world.getLinkBreed(name) == agents))return name;
+		return null;
+	}
+	static AgentSet findBreed(World world, byte kind, String name, String primName) throws ExtensionException{
+		AgentSet breed;
+		if(name.equals("TURTLES")){
+			breed = world.turtles();
+		}else if(name.equals("PATCHES")){
+			breed = world.patches();
+		}else if(name.equals("LINKS")){
+			breed = world.links();
+		}else{
+			breed = kind == LINK ? world.getLinkBreed(name) : world.getBreed(name);
+		}
+		if(breed == null)throw new ExtensionException(primName+" the schedule has events for the breed "+name+", which does not exist in this model");
+		return breed;
+	}
+	static Agent findAgent(World world, byte kind, long id, HashMap<Long,Agent> links, String primName) throws ExtensionException{
+		Agent agent = null;
+		if(kind == TURTLE){
+			agent = world.getTurtle(id);
+		}else if(kind == PATCH){
+			agent = world.getPatch((int)id);
+		}else if(kind == LINK){
+			agent = links.get(id);
+		}
+		if(agent == null || agent.id == -1)throw new ExtensionException(primName+" the schedule has events for "+(kind == PATCH ? "patch " : (kind == LINK ? "link " : "turtle "))+id+", which does not exist, create the agents (or restore the world, e.g. with import-world) before the schedule");
+		return agent;
+	}
+	/*
+	 * The agents of an event that single agent events were merged into, less those that have died or been unscheduled
+	 * since.
+	 */
+	static ArrayList<Agent> liveCoalesced(LogoEvent event){
+		ArrayList<Agent> live = new ArrayList<Agent>(event.coalescedCount);
+		for(int i = 0; i < event.coalescedCount; i++){
+			if(event.coalesced[i] != null && event.coalesced[i].id != -1)live.add(event.coalesced[i]);
+		}
+		return live;
+	}
+	static HashMap<Long,Agent> linksById(World world){
+		HashMap<Long,Agent> links = new HashMap<Long,Agent>();
+		for(AgentIterator iter = world.links().iterator(); iter.hasNext();){
+			Agent link = iter.next();
+			links.put(link.id, link);
+		}
+		return links;
+	}
+	static byte kindOf(Agent agent){
+		if(agent instanceof Patch)return PATCH;
+		if(agent instanceof Link)return LINK;
+		return TURTLE;
+	}
+	static byte kindOf(AgentKind kind){
+		if(kind == AgentKindJ.Patch())return PATCH;
+		if(kind == AgentKindJ.Link())return LINK;
+		return TURTLE;
+	}
+	static AgentKind agentKind(byte kind){
+		if(kind == PATCH)return AgentKindJ.Patch();
+		if(kind == LINK)return AgentKindJ.Link();
+		return AgentKindJ.Turtle();
+	}
+}
@@ -0,0 +1,131 @@
+package time.datatypes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+
+import org.nlogo.core.LogoList;
+import org.nlogo.nvm.AnonymousCommand;
+
+/*
+ * ScheduleStats holds the counters a LogoSchedule keeps about its own activity, reported by time:schedule-stats.
+ * Apart from the per-task timings, which cost two calls to System.nanoTime() per dispatched event (taken just around
+ * the event's task runs, so rescheduling isn't counted), everything is a plain field increment.  Tasks are told apart
+ * by their procedure and reported under its display name.
+ */
+public class ScheduleStats {
+	static final int HISTOGRAM_BUCKETS = 40; // bucket i counts durations in [2^(i-1), 2^i) nanoseconds
+
+	long enqueued = 0;
+	long dispatched = 0;
+	long rescheduled = 0;
+	long cancelled = 0;
+	long coalesced = 0;
+	long purged = 0;
+	long skippedDeadAgents = 0;
+	int maxDepth = 0;
+	IdentityHashMap<Object,TaskStats> tasks = new IdentityHashMap<Object,TaskStats>();
+	// Consecutive events very often share a task, remember the last one to skip the map lookup
+	private Object lastProcedure = null;
+	private TaskStats lastTaskStats = null;
+
+	void recordDepth(int depth){
+		if(depth > maxDepth)maxDepth = depth;
+	}
+	void recordDispatch(AnonymousCommand task, long nanos){
+		dispatched++;
+		Object procedure = task.procedure();
+		if(procedure != lastProcedure || lastTaskStats == null){
+			lastTaskStats = tasks.get(procedure);
+			if(lastTaskStats == null){
+				lastTaskStats = new TaskStats(procedure == null ? "unknown" : task.procedure().displayName());
+				tasks.put(procedure, lastTaskStats);
+			}
+			lastProcedure = procedure;
+		}
+		lastTaskStats.record(nanos);
+	}
+	public void reset(){
+		enqueued = 0;
+		dispatched = 0;
+		rescheduled = 0;
+		cancelled = 0;
+		coalesced = 0;
+		purged = 0;
+		skippedDeadAgents = 0;
+		maxDepth = 0;
+		tasks.clear();
+		lastProcedure = null;
+		lastTaskStats = null;
+	}
+	/*
+	 * Reports the counters as a list of [name value] pairs.  The "tasks" entry holds one list per task:
+	 * [name count total-ms mean-ms max-ms histogram], where histogram is a list of [upper-bound-ms count] pairs
+	 * for the non-empty buckets.
+	 */
+	public LogoList toLogoList(int depth){
+		ArrayList<Object> result = new ArrayList<Object>();
+		result.add(pair("enqueued", (double)enqueued));
+		result.add(pair("dispatched", (double)dispatched));
+		result.add(pair("rescheduled", (double)rescheduled));
+		result.add(pair("cancelled", (double)cancelled));
+		result.add(pair("coalesced", (double)coalesced));
+		result.add(pair("skipped-dead-agents", (double)skippedDeadAgents));
+		result.add(pair("purged", (double)purged));
+		result.add(pair("queue-depth", (double)depth));
+		result.add(pair("max-queue-depth", (double)maxDepth));
+		// Different procedures can share a display name, report them together
+		LinkedHashMap<String,TaskStats> byName = new LinkedHashMap<String,TaskStats>();
+		for(TaskStats stats : tasks.values()){
+			TaskStats merged = byName.get(stats.name);
+			if(merged == null){
+				merged = new TaskStats(stats.name);
+				byName.put(stats.name, merged);
+			}
+			merged.add(stats);
+		}
+		ArrayList<Object> taskList = new ArrayList<Object>();
+		for(TaskStats stats : byName.values()){
+			taskList.add(stats.toLogoList());
+		}
+		result.add(pair("tasks", LogoList.fromJava(taskList)));
+		return LogoList.fromJava(result);
+	}
+	private static LogoList pair(String name, Object value){
+		return LogoList.fromJava(Arrays.asList(name, value));
+	}
+
+	static class TaskStats {
+		final String name;
+		long count = 0;
+		long totalNanos = 0;
+		long maxNanos = 0;
+		final long[] histogram = new long[HISTOGRAM_BUCKETS];
+
+		TaskStats(String name){
+			this.name = name;
+		}
+		void record(long nanos){
+			count++;
+			totalNanos += nanos;
+			if(nanos > maxNanos)maxNanos = nanos;
+			histogram[Math.min(HISTOGRAM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(nanos, 0L)))]++;
+		}
+		void add(TaskStats other){
+			count += other.count;
+			totalNanos += other.totalNanos;
+			maxNanos = Math.max(maxNanos, other.maxNanos);
+			for(int i = 0; i < HISTOGRAM_BUCKETS; i++){
+				histogram[i] += other.histogram[i];
+			}
+		}
+		LogoList toLogoList(){
+			ArrayList<Object> buckets = new ArrayList<Object>();
+			for(int i = 0; i < HISTOGRAM_BUCKETS; i++){
+				if(histogram[i] > 0)buckets.add(LogoList.fromJava(Arrays.asList((Object)((1L << i) / 1e6), (double)histogram[i])));
+			}
+			return LogoList.fromJava(Arrays.asList((Object)name, (double)count, totalNanos / 1e6,
+					count == 0 ? 0.0 : totalNanos / 1e6 / count, maxNanos / 1e6, LogoList.fromJava(buckets)));
+		}
+	}
+}
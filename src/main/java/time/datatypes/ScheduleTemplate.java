@@ -0,0 +1,154 @@
+package time.datatypes;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.nlogo.agent.Agent;
+import org.nlogo.agent.AgentIterator;
+import org.nlogo.agent.AgentSet;
+import org.nlogo.agent.ArrayAgentSet;
+import org.nlogo.agent.World;
+import org.nlogo.api.ExtensionException;
+import org.nlogo.nvm.AnonymousCommand;
+
+import time.TimeEnums.PeriodType;
+
+/*
+ * ScheduleTemplate is a frozen copy of a LogoSchedule (its pending events and its anchor), see
+ * time:save-schedule-template.  A model that builds the same schedule at the start of every run, e.g. each run of a
+ * BehaviorSpace experiment, can build it once and instantiate the template in later runs instead of adding every
+ * event again.  The events are held column by column in the order they would be dispatched, and agents are held by
+ * who number (or patch or link id) so that a template outlives the agents it was made from, like ScheduleSnapshot
+ * they are looked up again in the world the template is instantiated in.
+ */
+class ScheduleTemplate {
+	private final LogoTime timeAnchor;
+	private final PeriodType tickType;
+	private final Double tickValue;
+	private final long nextEvent;
+	private final int size;
+	private final long[] ids;
+	private final double[] ticks;
+	private final AnonymousCommand[] tasks;
+	private final double[] repeatIntervals; // NaN if the event doesn't repeat
+	private final PeriodType[] repeatPeriodTypes;
+	private final boolean[] shuffles;
+	private final byte[] targets; // ScheduleSnapshot.OBSERVER, AGENT, BREED, MEMBERS or COALESCED
+	private final byte[] kinds;
+	private final long[] agentIds; // for AGENT
+	private final String[] breeds; // for BREED
+	private final long[][] members; // for MEMBERS and COALESCED
+
+	ScheduleTemplate(LogoSchedule schedule, World world) throws ExtensionException{
+		timeAnchor = schedule.timeAnchor == null ? null : new LogoTime(schedule.timeAnchor);
+		tickType = schedule.tickType;
+		tickValue = schedule.tickValue;
+		nextEvent = schedule.nextEvent;
+		LogoEvent[] events = schedule.scheduleQueue.toSortedArray();
+		int n = 0;
+		for(LogoEvent event : events){
+			// An event for agents that have all died would be skipped anyway
+			if(!LogoSchedule.targetsOnlyDeadAgents(event))events[n++] = event;
+		}
+		size = n;
+		ids = new long[n];
+		ticks = new double[n];
+		tasks = new AnonymousCommand[n];
+		repeatIntervals = new double[n];
+		repeatPeriodTypes = new PeriodType[n];
+		shuffles = new boolean[n];
+		targets = new byte[n];
+		kinds = new byte[n];
+		agentIds = new long[n];
+		breeds = new String[n];
+		members = new long[n][];
+		for(int i = 0; i < n; i++){
+			LogoEvent event = events[i];
+			ids[i] = event.id;
+			ticks[i] = event.tick;
+			tasks[i] = event.task;
+			repeatIntervals[i] = event.repeatInterval == null ? Double.NaN : event.repeatInterval;
+			repeatPeriodTypes[i] = event.repeatIntervalPeriodType;
+			shuffles[i] = event.shuffleAgentSet != null && event.shuffleAgentSet;
+			if(event.agent != null){
+				targets[i] = ScheduleSnapshot.AGENT;
+				kinds[i] = ScheduleSnapshot.kindOf(event.agent);
+				agentIds[i] = event.agent.id;
+			}else if(event.coalesced != null){
+				targets[i] = ScheduleSnapshot.COALESCED;
+				ArrayList<Agent> live = ScheduleSnapshot.liveCoalesced(event);
+				kinds[i] = ScheduleSnapshot.kindOf(live.get(0));
+				members[i] = new long[live.size()];
+				for(int m = 0; m < members[i].length; m++){
+					members[i][m] = live.get(m).id;
+				}
+			}else if(event.agents == null){
+				targets[i] = ScheduleSnapshot.OBSERVER;
+			}else{
+				kinds[i] = ScheduleSnapshot.kindOf(event.agents.kind());
+				breeds[i] = ScheduleSnapshot.breedName(event.agents, world);
+				if(breeds[i] != null){
+					targets[i] = ScheduleSnapshot.BREED;
+				}else{
+					targets[i] = ScheduleSnapshot.MEMBERS;
+					ArrayList<Agent> live = new ArrayList<Agent>(event.agents.count());
+					for(AgentIterator iter = event.agents.iterator(); iter.hasNext();){
+						live.add(iter.next());
+					}
+					if(!live.isEmpty())kinds[i] = ScheduleSnapshot.kindOf(live.get(0));
+					members[i] = new long[live.size()];
+					for(int m = 0; m < members[i].length; m++){
+						members[i][m] = live.get(m).id;
+					}
+				}
+			}
+		}
+	}
+	int size(){
+		return size;
+	}
+	/*
+	 * Replaces the events and the anchor of the schedule with those of the template.  The agents are all looked up
+	 * before the schedule is touched, so the schedule is left as it was if one of them is missing.
+	 */
+	void instantiate(LogoSchedule schedule, World world) throws ExtensionException{
+		String primName = "time:instantiate-schedule-template";
+		ArrayList<LogoEvent> events = new ArrayList<LogoEvent>(size);
+		HashMap<Long,Agent> links = null;
+		// Breeds are looked up once each rather than once per event
+		HashMap<String,AgentSet> breedSets = new HashMap<String,AgentSet>();
+		for(int i = 0; i < size; i++){
+			Double repeatInterval = Double.isNaN(repeatIntervals[i]) ? null : repeatIntervals[i];
+			if(kinds[i] == ScheduleSnapshot.LINK && links == null && targets[i] != ScheduleSnapshot.OBSERVER && targets[i] != ScheduleSnapshot.BREED)links = ScheduleSnapshot.linksById(world);
+			switch(targets[i]){
+			case ScheduleSnapshot.AGENT:
+				events.add(new LogoEvent(ids[i], ScheduleSnapshot.findAgent(world, kinds[i], agentIds[i], links, primName), tasks[i], ticks[i], repeatInterval, repeatPeriodTypes[i], shuffles[i]));
+				break;
+			case ScheduleSnapshot.BREED:
+				AgentSet breed = breedSets.get(breeds[i]);
+				if(breed == null){
+					breed = ScheduleSnapshot.findBreed(world, kinds[i], breeds[i], primName);
+					breedSets.put(breeds[i], breed);
+				}
+				events.add(new LogoEvent(ids[i], breed, tasks[i], ticks[i], repeatInterval, repeatPeriodTypes[i], shuffles[i]));
+				break;
+			case ScheduleSnapshot.MEMBERS:
+				Agent[] agents = new Agent[members[i].length];
+				for(int m = 0; m < agents.length; m++){
+					agents[m] = ScheduleSnapshot.findAgent(world, kinds[i], members[i][m], links, primName);
+				}
+				events.add(new LogoEvent(ids[i], new ArrayAgentSet(ScheduleSnapshot.agentKind(kinds[i]), null, agents), tasks[i], ticks[i], repeatInterval, repeatPeriodTypes[i], shuffles[i]));
+				break;
+			case ScheduleSnapshot.COALESCED:
+				Agent[] merged = new Agent[members[i].length];
+				for(int m = 0; m < merged.length; m++){
+					merged[m] = ScheduleSnapshot.findAgent(world, kinds[i], members[i][m], links, primName);
+				}
+				events.add(LogoEvent.merged(ids[i], merged, tasks[i], ticks[i], repeatInterval, repeatPeriodTypes[i]));
+				break;
+			default:
+				events.add(new LogoEvent(ids[i], (AgentSet)null, tasks[i], ticks[i], repeatInterval, repeatPeriodTypes[i], shuffles[i]));
+			}
+		}
+		schedule.restore(timeAnchor, tickValue, tickType, nextEvent, events);
+	}
+}
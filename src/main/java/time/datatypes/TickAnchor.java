@@ -0,0 +1,52 @@
+package time.datatypes;
+import org.nlogo.agent.World;
+import org.nlogo.api.ExtensionException;
+
+import time.TimeEnums.PeriodType;
+
+/*
+ * TickAnchor is what a LogoTime made by time:anchor-to-ticks is anchored to: a time, the period one tick stands for
+ * and the world whose ticks are counted.  The time at the current tick is worked out once per tick value and shared,
+ * so reading the date from every agent within a tick does the joda arithmetic once.  Anchored times with the same
+ * anchor, period and world share one TickAnchor, since a model commonly anchors the same time over again, e.g. in a
+ * reporter called by every agent.  The shared anchors are kept by the schedule of the world's workspace (see
+ * LogoSchedule.tickAnchor), so they go when the workspace does.
+ */
+class TickAnchor {
+	private final LogoTime origin;
+	private final PeriodType tickType;
+	private final Double tickValue;
+	private final World world;
+	private double lastTicks = Double.NaN;
+	private LogoTime current = null;
+
+	/*
+	 * The time must not be anchored itself.
+	 */
+	TickAnchor(LogoTime origin, PeriodType tickType, Double tickValue, World world){
+		this.origin = origin;
+		this.tickType = tickType;
+		this.tickValue = tickValue;
+		this.world = world;
+	}
+	/*
+	 * Returns the time at the world's current tick, only recomputing it when the tick count has changed.
+	 */
+	LogoTime current() throws ExtensionException{
+		double ticks = world.ticks();
+		if(current == null || ticks != lastTicks){
+			current = origin.plus(tickType, ticks*tickValue);
+			lastTicks = ticks;
+		}
+		return current;
+	}
+	public boolean equals(Object obj){
+		if(!(obj instanceof TickAnchor))return false;
+		TickAnchor that = (TickAnchor)obj;
+		return world == that.world && tickType == that.tickType && tickValue.equals(that.tickValue) &&
+				origin.dateType == that.origin.dateType && origin.millis == that.origin.millis;
+	}
+	public int hashCode(){
+		return ((Long.hashCode(origin.millis) * 31 + origin.dateType.hashCode()) * 31 + tickType.hashCode()) * 31 + tickValue.hashCode();
+	}
+}
@@ -0,0 +1,29 @@
+package time.datatypes;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import time.TimeEnums.DateType;
+
+/*
+ * TimeFormats holds the default format of each date type, shared by every LogoTime.  DateTimeFormatters are immutable
+ * and thread safe, so one instance per format is enough for the whole process.  Custom formats go straight to
+ * DateTimeFormat.forPattern, which keeps its own cache of the patterns it has built.
+ */
+public final class TimeFormats {
+	public static final DateTimeFormatter DATETIME = DateTimeFormat.forPattern("yyyy-MM-dd HH:mm:ss.SSS");
+	public static final DateTimeFormatter DATE = DateTimeFormat.forPattern("yyyy-MM-dd");
+	public static final DateTimeFormatter DAY = DateTimeFormat.forPattern("MM-dd");
+
+	private TimeFormats(){
+	}
+	public static DateTimeFormatter defaultFor(DateType dateType){
+		switch(dateType){
+		case DATE:
+			return DATE;
+		case DAY:
+			return DAY;
+		default:
+			return DATETIME;
+		}
+	}
+}
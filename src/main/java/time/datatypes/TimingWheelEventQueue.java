@@ -0,0 +1,302 @@
+package time.datatypes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/*
+ * TimingWheelEventQueue is a two level hierarchical timing wheel for events that fall on whole-numbered ticks.
+ * The inner wheel has one slot per tick of the current block of WHEEL_SIZE ticks, the outer wheel has one slot per
+ * block for the next WHEEL_SIZE - 1 blocks and is cascaded into the inner wheel when the schedule reaches that block.
+ * Fractional ticks, ticks beyond the reach of the outer wheel, ticks earlier than the wheel's position and events
+ * that repeat by a calendar period (MONTH/YEAR) overflow into an ordinary LogoEventHeap.  Dispatching from the wheel
+ * is a walk over the current slot, whose events are put in id order the first time it becomes the head of the
+ * queue, so the overall order is exactly that of the LogoEventComparator.
+ */
+public class TimingWheelEventQueue implements EventQueue {
+	private static final int WHEEL_BITS = 10;
+	private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+	private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+	private static final double MAX_WHEEL_TICK = (double)(1L << 52);
+	private static final Comparator<LogoEvent> BY_ID = new Comparator<LogoEvent>() {
+		public int compare(LogoEvent a, LogoEvent b) {
+			return a.id < b.id ? -1 : (a.id > b.id ? 1 : 0);
+		}
+	};
+
+	private final Slot[] inner = new Slot[WHEEL_SIZE];
+	private final Slot[] outer = new Slot[WHEEL_SIZE];
+	private final long[] innerOccupied = new long[WHEEL_SIZE / 64];
+	private final long[] outerOccupied = new long[WHEEL_SIZE / 64];
+	private final LogoEventHeap overflow = new LogoEventHeap();
+	private long base = 0; // no event on the wheel falls on a tick before this one
+	private int headSlot = -1; // inner slot holding the earliest event on the wheel, -1 if unknown
+	private int wheelSize = 0;
+
+	public TimingWheelEventQueue(){
+		for(int i = 0; i < WHEEL_SIZE; i++){
+			inner[i] = new Slot();
+			outer[i] = new Slot();
+		}
+	}
+	public int size(){
+		return wheelSize + overflow.size();
+	}
+	public boolean isEmpty(){
+		return size() == 0;
+	}
+	public void add(LogoEvent event){
+		double tick = event.tick;
+		if(event.repeatIntervalPeriodType != null || tick != Math.rint(tick) || Math.abs(tick) > MAX_WHEEL_TICK){
+			overflow.add(event);
+			return;
+		}
+		long t = (long)tick;
+		if(wheelSize == 0){
+			base = t;
+			headSlot = -1;
+		}
+		long baseBlock = base >> WHEEL_BITS;
+		long block = t >> WHEEL_BITS;
+		if(t >= base && block == baseBlock){
+			int slot = (int)(t & WHEEL_MASK);
+			inner[slot].append(event);
+			setBit(innerOccupied, slot);
+			event.queueIndex = slot;
+		}else if(block > baseBlock && block - baseBlock < WHEEL_SIZE){
+			int slot = (int)(block & WHEEL_MASK);
+			outer[slot].append(event);
+			setBit(outerOccupied, slot);
+			event.queueIndex = WHEEL_SIZE + slot;
+		}else{
+			overflow.add(event);
+			return;
+		}
+		wheelSize++;
+	}
+	public void addAll(ArrayList<LogoEvent> batch){
+		for(LogoEvent event : batch){
+			add(event);
+		}
+	}
+	public LogoEvent peek(){
+		LogoEvent wheelHead = wheelHead();
+		LogoEvent overflowHead = overflow.peek();
+		if(wheelHead == null)return overflowHead;
+		if(overflowHead == null)return wheelHead;
+		return isBefore(overflowHead, wheelHead) ? overflowHead : wheelHead;
+	}
+	public LogoEvent poll(){
+		LogoEvent wheelHead = wheelHead();
+		LogoEvent overflowHead = overflow.peek();
+		if(wheelHead == null || (overflowHead != null && isBefore(overflowHead, wheelHead))){
+			return overflow.poll();
+		}
+		Slot slot = inner[headSlot];
+		slot.removeFirst();
+		wheelHead.queueIndex = -1;
+		wheelSize--;
+		if(slot.size == 0){
+			clearBit(innerOccupied, headSlot);
+			headSlot = -1;
+		}
+		return wheelHead;
+	}
+	public void pollCohort(ArrayList<LogoEvent> cohort){
+		LogoEvent first = peek();
+		if(first == null)return;
+		double tick = first.tick;
+		LogoEvent overflowHead = overflow.peek();
+		if(headSlot >= 0 && first == inner[headSlot].first() && (overflowHead == null || overflowHead.tick != tick)){
+			// The whole cohort is the head slot of the wheel, already in id order
+			Slot slot = inner[headSlot];
+			for(int i = 0; i < slot.size; i++){
+				LogoEvent event = slot.items[slot.head + i];
+				event.queueIndex = -1;
+				cohort.add(event);
+			}
+			wheelSize -= slot.size;
+			slot.clearWithoutReset();
+			clearBit(innerOccupied, headSlot);
+			headSlot = -1;
+			return;
+		}
+		do{
+			cohort.add(poll());
+			first = peek();
+		}while(first != null && first.tick == tick);
+	}
+	/*
+	 * Removing an event from the wheel is a scan of its slot, i.e. it costs as much as the number of events that
+	 * share its tick (or its block for the outer wheel).
+	 */
+	public boolean remove(LogoEvent event){
+		if(overflow.contains(event))return overflow.remove(event);
+		int index = event.queueIndex;
+		if(index < 0 || index >= 2 * WHEEL_SIZE)return false;
+		boolean isInner = index < WHEEL_SIZE;
+		int slotIndex = index & WHEEL_MASK;
+		Slot slot = isInner ? inner[slotIndex] : outer[slotIndex];
+		if(!slot.remove(event))return false;
+		event.queueIndex = -1;
+		wheelSize--;
+		if(slot.size == 0){
+			if(isInner){
+				clearBit(innerOccupied, slotIndex);
+				if(headSlot == slotIndex)headSlot = -1;
+			}else{
+				clearBit(outerOccupied, slotIndex);
+			}
+		}
+		return true;
+	}
+	public void clear(){
+		for(int i = 0; i < WHEEL_SIZE; i++){
+			inner[i].clear();
+			outer[i].clear();
+		}
+		Arrays.fill(innerOccupied, 0L);
+		Arrays.fill(outerOccupied, 0L);
+		overflow.clear();
+		base = 0;
+		headSlot = -1;
+		wheelSize = 0;
+	}
+	public LogoEvent[] toSortedArray(){
+		LogoEvent[] copy = new LogoEvent[size()];
+		int n = 0;
+		for(int i = 0; i < WHEEL_SIZE; i++){
+			n = inner[i].copyInto(copy, n);
+			n = outer[i].copyInto(copy, n);
+		}
+		for(LogoEvent event : overflow.toSortedArray()){
+			copy[n++] = event;
+		}
+		Arrays.sort(copy, new LogoEventComparator());
+		return copy;
+	}
+	/*
+	 * Find the earliest event on the wheel, advancing the wheel's position to its tick and cascading the next
+	 * occupied block of the outer wheel into the inner wheel when the current block is exhausted.
+	 */
+	private LogoEvent wheelHead(){
+		if(wheelSize == 0)return null;
+		if(headSlot < 0){
+			int slot = nextSetBit(innerOccupied, (int)(base & WHEEL_MASK));
+			if(slot < 0){
+				cascade();
+				slot = nextSetBit(innerOccupied, (int)(base & WHEEL_MASK));
+			}
+			headSlot = slot;
+			base = ((base >> WHEEL_BITS) << WHEEL_BITS) | slot;
+		}
+		Slot head = inner[headSlot];
+		if(!head.sorted)head.sortById();
+		return head.first();
+	}
+	private void cascade(){
+		long baseBlock = base >> WHEEL_BITS;
+		int start = (int)((baseBlock + 1) & WHEEL_MASK);
+		int slot = nextSetBit(outerOccupied, start);
+		if(slot < 0)slot = nextSetBit(outerOccupied, 0);
+		long block = baseBlock + ((slot - (baseBlock & WHEEL_MASK)) & WHEEL_MASK);
+		base = block << WHEEL_BITS;
+		Slot source = outer[slot];
+		for(int i = 0; i < source.size; i++){
+			LogoEvent event = source.items[source.head + i];
+			int innerSlot = (int)(((long)event.tick) & WHEEL_MASK);
+			inner[innerSlot].append(event);
+			setBit(innerOccupied, innerSlot);
+			event.queueIndex = innerSlot;
+		}
+		source.clearWithoutReset();
+		clearBit(outerOccupied, slot);
+	}
+	private static boolean isBefore(LogoEvent a, LogoEvent b){
+		return a.tick < b.tick || (a.tick == b.tick && a.id < b.id);
+	}
+	private static void setBit(long[] bits, int i){
+		bits[i >> 6] |= 1L << i;
+	}
+	private static void clearBit(long[] bits, int i){
+		bits[i >> 6] &= ~(1L << i);
+	}
+	private static int nextSetBit(long[] bits, int from){
+		int word = from >> 6;
+		if(word >= bits.length)return -1;
+		long w = bits[word] & (-1L << from);
+		while(true){
+			if(w != 0)return (word << 6) + Long.numberOfTrailingZeros(w);
+			if(++word == bits.length)return -1;
+			w = bits[word];
+		}
+	}
+
+	/*
+	 * A slot is a run of events stored in items[head, head+size).  Events are appended as they arrive and only
+	 * sorted by id (all events in an inner slot share the same tick) when the slot reaches the head of the queue.
+	 */
+	private static class Slot {
+		LogoEvent[] items = new LogoEvent[4];
+		int head = 0;
+		int size = 0;
+		boolean sorted = true;
+
+		LogoEvent first(){
+			return items[head];
+		}
+		void append(LogoEvent event){
+			if(head + size == items.length){
+				if(head > 0){
+					System.arraycopy(items, head, items, 0, size);
+					Arrays.fill(items, size, head + size, null);
+					head = 0;
+				}else{
+					items = Arrays.copyOf(items, items.length * 2);
+				}
+			}
+			if(size > 0 && event.id < items[head + size - 1].id)sorted = false;
+			items[head + size] = event;
+			size++;
+		}
+		void removeFirst(){
+			items[head] = null;
+			size--;
+			head = (size == 0) ? 0 : head + 1;
+		}
+		boolean remove(LogoEvent event){
+			for(int i = head; i < head + size; i++){
+				if(items[i] == event){
+					if(i == head){
+						removeFirst();
+					}else{
+						System.arraycopy(items, i + 1, items, i, head + size - i - 1);
+						items[head + size - 1] = null;
+						size--;
+					}
+					return true;
+				}
+			}
+			return false;
+		}
+		void sortById(){
+			Arrays.sort(items, head, head + size, BY_ID);
+			sorted = true;
+		}
+		int copyInto(LogoEvent[] dest, int offset){
+			System.arraycopy(items, head, dest, offset, size);
+			return offset + size;
+		}
+		void clear(){
+			for(int i = 0; i < size; i++){
+				items[head + i].queueIndex = -1;
+			}
+			clearWithoutReset();
+		}
+		void clearWithoutReset(){
+			Arrays.fill(items, head, head + size, null);
+			head = 0;
+			size = 0;
+			sorted = true;
+		}
+	}
+}
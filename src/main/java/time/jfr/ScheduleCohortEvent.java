@@ -0,0 +1,26 @@
+package time.jfr;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/*
+ * One tick-cohort of events dispatched by time:go or time:go-until.
+ */
+@Name("time.ScheduleCohort")
+@Label("Schedule Cohort")
+@Category({"NetLogo", "Time Extension"})
+@Description("Events dispatched by a discrete event schedule at one tick")
+@StackTrace(false)
+@Threshold("0 ms")
+class ScheduleCohortEvent extends jdk.jfr.Event {
+	@Label("Tick")
+	double tick;
+	@Label("Events")
+	int events;
+	@Label("Agents")
+	@Description("Number of times a task was run, once per agent (or the observer)")
+	long agents;
+}
@@ -0,0 +1,83 @@
+package time.jfr;
+
+/*
+ * TimeEvents emits the extension's Java Flight Recorder events.  jdk.jfr is not part of every Java 8 runtime
+ * (it arrived with 8u262), so callers only touch the events through these methods, guarded by ENABLED, and
+ * hold them as plain Objects; nothing outside this package refers to a jdk.jfr type.  When recording is off
+ * (or the event type is disabled) the begin methods return null and the end methods do nothing, without allocating:
+ * they ask a probe instance of each event type (see Probes) whether it is enabled before making an event to record.
+ */
+public final class TimeEvents {
+	public static final boolean ENABLED = isAvailable();
+
+	private TimeEvents(){
+	}
+	private static boolean isAvailable(){
+		try{
+			Class.forName("jdk.jfr.Event", false, TimeEvents.class.getClassLoader());
+			return true;
+		}catch(ClassNotFoundException e){
+			return false;
+		}catch(LinkageError e){
+			return false;
+		}
+	}
+	public static Object beginCohort(){
+		if(!Probes.COHORT.isEnabled())return null;
+		ScheduleCohortEvent event = new ScheduleCohortEvent();
+		event.begin();
+		return event;
+	}
+	public static void endCohort(Object handle, double tick, int events, long agents){
+		ScheduleCohortEvent event = (ScheduleCohortEvent)handle;
+		event.end();
+		if(event.shouldCommit()){
+			event.tick = tick;
+			event.events = events;
+			event.agents = agents;
+			event.commit();
+		}
+	}
+	public static Object beginTimeSeriesLoad(){
+		if(!Probes.LOAD.isEnabled())return null;
+		TimeSeriesLoadEvent event = new TimeSeriesLoadEvent();
+		event.begin();
+		return event;
+	}
+	public static void endTimeSeriesLoad(Object handle, String file, int rows, long bytes){
+		TimeSeriesLoadEvent event = (TimeSeriesLoadEvent)handle;
+		event.end();
+		if(event.shouldCommit()){
+			event.file = file;
+			event.rows = rows;
+			event.bytes = bytes;
+			event.commit();
+		}
+	}
+	public static Object beginTimeSeriesGet(){
+		if(!Probes.GET.isEnabled())return null;
+		TimeSeriesGetEvent event = new TimeSeriesGetEvent();
+		event.begin();
+		return event;
+	}
+	public static void endTimeSeriesGet(Object handle, String method, String lookup, int columns){
+		TimeSeriesGetEvent event = (TimeSeriesGetEvent)handle;
+		event.end();
+		if(event.shouldCommit()){
+			event.method = method;
+			event.lookup = lookup;
+			event.columns = columns;
+			event.commit();
+		}
+	}
+
+	/*
+	 * Whether an event type is enabled doesn't depend on the instance asked, so one instance of each is kept for
+	 * asking.  They live in their own class, which is only loaded once a begin method is called, i.e. when ENABLED.
+	 */
+	private static final class Probes {
+		static final ScheduleCohortEvent COHORT = new ScheduleCohortEvent();
+		static final TimeSeriesLoadEvent LOAD = new TimeSeriesLoadEvent();
+		static final TimeSeriesGetEvent GET = new TimeSeriesGetEvent();
+	}
+}
@@ -0,0 +1,27 @@
+package time.jfr;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/*
+ * A single time:ts-get, time:ts-get-exact or time:ts-get-interp lookup.  Models tend to do these per agent per
+ * tick, so only slow lookups are recorded unless the threshold is lowered in the recording settings.
+ */
+@Name("time.TimeSeriesGet")
+@Label("Time Series Get")
+@Category({"NetLogo", "Time Extension"})
+@Description("A lookup into a time series")
+@StackTrace(false)
+@Threshold("1 ms")
+class TimeSeriesGetEvent extends jdk.jfr.Event {
+	@Label("Method")
+	String method;
+	@Label("Lookup")
+	@Description("hit if the time is in the series, otherwise nearest, interpolate or out-of-range")
+	String lookup;
+	@Label("Columns")
+	int columns;
+}
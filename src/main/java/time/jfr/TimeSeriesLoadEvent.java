@@ -0,0 +1,27 @@
+package time.jfr;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/*
+ * Reading and parsing a time series file for time:ts-load and time:ts-load-with-format.
+ */
+@Name("time.TimeSeriesLoad")
+@Label("Time Series Load")
+@Category({"NetLogo", "Time Extension"})
+@Description("A time series file read and parsed by time:ts-load")
+@StackTrace(false)
+@Threshold("0 ms")
+class TimeSeriesLoadEvent extends jdk.jfr.Event {
+	@Label("File")
+	String file;
+	@Label("Rows")
+	int rows;
+	@Label("Size")
+	@DataAmount
+	long bytes;
+}
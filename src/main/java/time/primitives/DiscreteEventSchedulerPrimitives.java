@@ -9,77 +9,179 @@ import org.nlogo.api.LogoException;
 import org.nlogo.api.Reporter;
 import org.nlogo.core.Syntax;
 import org.nlogo.core.SyntaxJ;
+import org.nlogo.nvm.ExtensionContext;
 
 import time.TimeEnums.AddType;
+import time.datatypes.LogoSchedule;
 import time.datatypes.LogoTime;
-import time.TimeExtension;
 import time.TimeUtils;
 
 public class DiscreteEventSchedulerPrimitives {
 	
-	public static class AddEvent implements Command {
+	/*
+	 * Every instance of the extension (i.e. every workspace) owns its schedule, which is handed to the schedule
+	 * primitives when the extension is loaded.
+	 */
+	static abstract class ScheduleCommand implements Command {
+		protected final LogoSchedule schedule;
+
+		ScheduleCommand(LogoSchedule schedule){
+			this.schedule = schedule;
+		}
+	}
+	
+	static abstract class ScheduleReporter implements Reporter {
+		protected final LogoSchedule schedule;
+
+		ScheduleReporter(LogoSchedule schedule){
+			this.schedule = schedule;
+		}
+	}
+	
+	public static class AddEvent extends ScheduleCommand {
+		public AddEvent(LogoSchedule schedule){
+			super(schedule);
+		}
 		public Syntax getSyntax() {
 			return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType(),
 					Syntax.WildcardType(),
 					Syntax.WildcardType()});
 		}
 		public void perform(Argument args[], Context context) throws ExtensionException, LogoException {
-			TimeExtension.schedule.addEvent(args,context,AddType.DEFAULT);
+			schedule.addEvent(args,context,AddType.DEFAULT);
 		}
 	}
 	
-	public static class AddEventShuffled implements Command {
+	public static class AddEvents extends ScheduleCommand {
+		public AddEvents(LogoSchedule schedule){
+			super(schedule);
+		}
+		public Syntax getSyntax() {
+			return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType(),
+					Syntax.WildcardType(),
+					Syntax.ListType()});
+		}
+		public void perform(Argument args[], Context context) throws ExtensionException, LogoException {
+			schedule.addEvents(args,context);
+		}
+	}
+	
+	public static class AddAgentEvents extends ScheduleCommand {
+		public AddAgentEvents(LogoSchedule schedule){
+			super(schedule);
+		}
+		public Syntax getSyntax() {
+			return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType(),
+					Syntax.ListType()});
+		}
+		public void perform(Argument args[], Context context) throws ExtensionException, LogoException {
+			schedule.addAgentEvents(args,context);
+		}
+	}
+	
+	public static class AddEventShuffled extends ScheduleCommand {
+		public AddEventShuffled(LogoSchedule schedule){
+			super(schedule);
+		}
 		public Syntax getSyntax() {
 			return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType(),
 					Syntax.WildcardType(),
 					Syntax.WildcardType()});
 		}
 		public void perform(Argument args[], Context context) throws ExtensionException, LogoException {
-			TimeExtension.schedule.addEvent(args,context,AddType.SHUFFLE);
+			schedule.addEvent(args,context,AddType.SHUFFLE);
 		}
 	}
 	
-	public static class AnchorSchedule implements Command {
+	public static class AnchorSchedule extends ScheduleCommand {
+		public AnchorSchedule(LogoSchedule schedule){
+			super(schedule);
+		}
 		public Syntax getSyntax() {
 			return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType(),Syntax.NumberType(),Syntax.StringType()});
 		}
 		public void perform(Argument args[], Context context)
 				throws ExtensionException, LogoException {
-			TimeExtension.schedule.anchorSchedule(TimeUtils.getTimeFromArgument(args, 0),TimeUtils.getDoubleFromArgument(args, 1),TimeUtils.stringToPeriodType(TimeUtils.getStringFromArgument(args, 2)));
+			schedule.anchorSchedule(TimeUtils.getTimeFromArgument(args, 0),TimeUtils.getDoubleFromArgument(args, 1),TimeUtils.stringToPeriodType(TimeUtils.getStringFromArgument(args, 2)));
+		}
+	}
+	
+	public static class CancelEvent extends ScheduleCommand {
+		public CancelEvent(LogoSchedule schedule){
+			super(schedule);
+		}
+		public Syntax getSyntax() {
+			return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType()});
+		}
+		public void perform(Argument args[], Context context) throws ExtensionException, LogoException {
+			schedule.cancelEvent(TimeUtils.getEventFromArgument(args, 0));
+		}
+	}
+	
+	public static class UnscheduleAgent extends ScheduleCommand {
+		public UnscheduleAgent(LogoSchedule schedule){
+			super(schedule);
+		}
+		public Syntax getSyntax() {
+			return SyntaxJ.commandSyntax(new int[]{Syntax.AgentType() | Syntax.AgentsetType()});
+		}
+		public void perform(Argument args[], Context context) throws ExtensionException, LogoException {
+			Object target = args[0].get();
+			if(target instanceof org.nlogo.agent.Agent){
+				schedule.unscheduleAgent((org.nlogo.agent.Agent)target);
+			}else if(target instanceof org.nlogo.agent.AgentSet){
+				for(org.nlogo.agent.AgentIterator iter = ((org.nlogo.agent.AgentSet)target).iterator(); iter.hasNext();){
+					schedule.unscheduleAgent(iter.next());
+				}
+			}else{
+				throw new ExtensionException("time:unschedule-agent expecting an agent or agentset as the first argument");
+			}
 		}
 	}
 	
-	public static class ClearSchedule implements Command {
+	public static class ClearSchedule extends ScheduleCommand {
+		public ClearSchedule(LogoSchedule schedule){
+			super(schedule);
+		}
 		public Syntax getSyntax() {
 			return SyntaxJ.commandSyntax(new int[]{});
 		}
 		public void perform(Argument args[], Context context) throws ExtensionException, LogoException {
-			TimeExtension.schedule.clear();
+			schedule.clear();
 		}
 	}
 	
-	public static class GetSize implements Reporter {
+	public static class GetSize extends ScheduleReporter {
+		public GetSize(LogoSchedule schedule){
+			super(schedule);
+		}
 		public Syntax getSyntax() {
 			return SyntaxJ.reporterSyntax(new int[]{},
 					Syntax.NumberType());
 		}
 		public Object report(Argument args[], Context context)
 				throws ExtensionException, LogoException {
-			if(TimeExtension.debug)TimeUtils.printToConsole(context, "size of schedule: "+TimeExtension.schedule.scheduleTree.size());
-			return new Double(TimeExtension.schedule.scheduleTree.size());
+			if(schedule.getLogger().isDebug())schedule.getLogger().debug("size of schedule: "+schedule.size());
+			return new Double(schedule.size());
 		}
 	}
 	
-	public static class Go implements Command {
+	public static class Go extends ScheduleCommand {
+		public Go(LogoSchedule schedule){
+			super(schedule);
+		}
 		public Syntax getSyntax() {
 			return SyntaxJ.commandSyntax(new int[]{});
 		}
 		public void perform(Argument args[], Context context) throws ExtensionException, LogoException {
-			TimeExtension.schedule.performScheduledTasks(args, context);
+			schedule.performScheduledTasks(args, context);
 		}
 	}
 	
-	public static class GoUntil implements Command {
+	public static class GoUntil extends ScheduleCommand {
+		public GoUntil(LogoSchedule schedule){
+			super(schedule);
+		}
 		public Syntax getSyntax() {
 			return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType()});
 		}
@@ -92,14 +194,29 @@ public class DiscreteEventSchedulerPrimitives {
 				untilTick = TimeUtils.getDoubleFromArgument(args, 0);
 			}
 			if(untilTime == null){
-				TimeExtension.schedule.performScheduledTasks(args, context, untilTick);
+				schedule.performScheduledTasks(args, context, untilTick);
 			}else{
-				TimeExtension.schedule.performScheduledTasks(args, context, untilTime);
+				schedule.performScheduledTasks(args, context, untilTime);
 			}
 		}
 	}
 	
-	public static class RepeatEvent implements Command {
+	public static class LastScheduledEvent extends ScheduleReporter {
+		public LastScheduledEvent(LogoSchedule schedule){
+			super(schedule);
+		}
+		public Syntax getSyntax() {
+			return SyntaxJ.reporterSyntax(new int[]{},Syntax.WildcardType());
+		}
+		public Object report(Argument args[], Context context) throws ExtensionException, LogoException {
+			return schedule.getLastEvent();
+		}
+	}
+	
+	public static class RepeatEvent extends ScheduleCommand {
+		public RepeatEvent(LogoSchedule schedule){
+			super(schedule);
+		}
 		public Syntax getSyntax() {
 			return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType(),
 					Syntax.WildcardType(),
@@ -107,11 +224,14 @@ public class DiscreteEventSchedulerPrimitives {
 					Syntax.NumberType()});
 		}
 		public void perform(Argument args[], Context context) throws ExtensionException, LogoException {
-			TimeExtension.schedule.addEvent(args,context,AddType.REPEAT);
+			schedule.addEvent(args,context,AddType.REPEAT);
 		}
 	}
 	
-	public static class RepeatEventShuffled implements Command {
+	public static class RepeatEventShuffled extends ScheduleCommand {
+		public RepeatEventShuffled(LogoSchedule schedule){
+			super(schedule);
+		}
 		public Syntax getSyntax() {
 			return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType(),
 					Syntax.WildcardType(),
@@ -119,11 +239,14 @@ public class DiscreteEventSchedulerPrimitives {
 					Syntax.NumberType()});
 		}
 		public void perform(Argument args[], Context context) throws ExtensionException, LogoException {
-			TimeExtension.schedule.addEvent(args,context,AddType.SHUFFLE);
+			schedule.addEvent(args,context,AddType.SHUFFLE);
 		}
 	}
 	
-	public static class RepeatEventShuffledWithPeriod implements Command {
+	public static class RepeatEventShuffledWithPeriod extends ScheduleCommand {
+		public RepeatEventShuffledWithPeriod(LogoSchedule schedule){
+			super(schedule);
+		}
 		public Syntax getSyntax() {
 			return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType(),
 					Syntax.WildcardType(),
@@ -132,11 +255,14 @@ public class DiscreteEventSchedulerPrimitives {
 					Syntax.StringType()});
 		}
 		public void perform(Argument args[], Context context) throws ExtensionException, LogoException {
-			TimeExtension.schedule.addEvent(args,context,AddType.SHUFFLE);
+			schedule.addEvent(args,context,AddType.SHUFFLE);
 		}
 	}
 	
-	public static class RepeatEventWithPeriod implements Command {
+	public static class RepeatEventWithPeriod extends ScheduleCommand {
+		public RepeatEventWithPeriod(LogoSchedule schedule){
+			super(schedule);
+		}
 		public Syntax getSyntax() {
 			return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType(),
 					Syntax.WildcardType(),
@@ -145,16 +271,163 @@ public class DiscreteEventSchedulerPrimitives {
 					Syntax.StringType()});
 		}
 		public void perform(Argument args[], Context context) throws ExtensionException, LogoException {
-			TimeExtension.schedule.addEvent(args,context,AddType.REPEAT);
+			schedule.addEvent(args,context,AddType.REPEAT);
+		}
+	}
+	
+	public static class RescheduleEvent extends ScheduleCommand {
+		public RescheduleEvent(LogoSchedule schedule){
+			super(schedule);
+		}
+		public Syntax getSyntax() {
+			return SyntaxJ.commandSyntax(new int[]{Syntax.WildcardType(),Syntax.WildcardType()});
+		}
+		public void perform(Argument args[], Context context) throws ExtensionException, LogoException {
+			schedule.rescheduleEvent(TimeUtils.getEventFromArgument(args, 0), args, context);
 		}
 	}
 	
-	public static class ShowSchedule implements Reporter {
+	public static class ResetScheduleStats extends ScheduleCommand {
+		public ResetScheduleStats(LogoSchedule schedule){
+			super(schedule);
+		}
+		public Syntax getSyntax() {
+			return SyntaxJ.commandSyntax(new int[]{});
+		}
+		public void perform(Argument args[], Context context) throws ExtensionException, LogoException {
+			schedule.getStats().reset();
+		}
+	}
+	
+	public static class GetScheduleStats extends ScheduleReporter {
+		public GetScheduleStats(LogoSchedule schedule){
+			super(schedule);
+		}
+		public Syntax getSyntax() {
+			return SyntaxJ.reporterSyntax(new int[]{},Syntax.ListType());
+		}
+		public Object report(Argument args[], Context context) throws ExtensionException, LogoException {
+			return schedule.getStats().toLogoList(schedule.size());
+		}
+	}
+	
+	public static class SetSchedulerMode extends ScheduleCommand {
+		public SetSchedulerMode(LogoSchedule schedule){
+			super(schedule);
+		}
+		public Syntax getSyntax() {
+			return SyntaxJ.commandSyntax(new int[]{Syntax.StringType()});
+		}
+		public void perform(Argument args[], Context context) throws ExtensionException, LogoException {
+			schedule.setSchedulerMode(TimeUtils.getStringFromArgument(args, 0));
+		}
+	}
+	
+	public static class ShowSchedule extends ScheduleReporter {
+		public ShowSchedule(LogoSchedule schedule){
+			super(schedule);
+		}
 		public Syntax getSyntax() {
 			return SyntaxJ.reporterSyntax(new int[]{},Syntax.StringType());
 		}
 		public Object report(Argument args[], Context context) throws ExtensionException, LogoException {
-			return TimeExtension.schedule.dump(false,false,false);
+			return schedule.dump(false,false,false);
+		}
+	}
+	
+	public static class SetCoalescing extends ScheduleCommand {
+		public SetCoalescing(LogoSchedule schedule){
+			super(schedule);
+		}
+		public Syntax getSyntax() {
+			return SyntaxJ.commandSyntax(new int[]{Syntax.BooleanType()});
+		}
+		public void perform(Argument args[], Context context) throws ExtensionException, LogoException {
+			schedule.setCoalescing(args[0].getBooleanValue());
+		}
+	}
+	
+	public static class StartTrace extends ScheduleCommand {
+		public StartTrace(LogoSchedule schedule){
+			super(schedule);
+		}
+		public Syntax getSyntax() {
+			return SyntaxJ.commandSyntax(new int[]{Syntax.StringType()});
+		}
+		public void perform(Argument args[], Context context) throws ExtensionException, LogoException {
+			schedule.startTrace(TimeUtils.resolveFile(TimeUtils.getStringFromArgument(args, 0), (ExtensionContext)context));
+		}
+	}
+	
+	public static class StopTrace extends ScheduleCommand {
+		public StopTrace(LogoSchedule schedule){
+			super(schedule);
+		}
+		public Syntax getSyntax() {
+			return SyntaxJ.commandSyntax(new int[]{});
+		}
+		public void perform(Argument args[], Context context) throws ExtensionException, LogoException {
+			schedule.stopTrace();
+		}
+	}
+	
+	public static class SaveSchedule extends ScheduleCommand {
+		public SaveSchedule(LogoSchedule schedule){
+			super(schedule);
+		}
+		public Syntax getSyntax() {
+			return SyntaxJ.commandSyntax(new int[]{Syntax.StringType()});
+		}
+		public void perform(Argument args[], Context context) throws ExtensionException, LogoException {
+			schedule.saveSchedule(TimeUtils.resolveFile(TimeUtils.getStringFromArgument(args, 0), (ExtensionContext)context), (ExtensionContext)context);
+		}
+	}
+	
+	public static class LoadSchedule extends ScheduleCommand {
+		public LoadSchedule(LogoSchedule schedule){
+			super(schedule);
+		}
+		public Syntax getSyntax() {
+			return SyntaxJ.commandSyntax(new int[]{Syntax.StringType(),Syntax.ListType()});
+		}
+		public void perform(Argument args[], Context context) throws ExtensionException, LogoException {
+			schedule.loadSchedule(TimeUtils.resolveFile(TimeUtils.getStringFromArgument(args, 0), (ExtensionContext)context), TimeUtils.getListFromArgument(args, 1), (ExtensionContext)context);
+		}
+	}
+	
+	public static class SaveScheduleTemplate extends ScheduleCommand {
+		public SaveScheduleTemplate(LogoSchedule schedule){
+			super(schedule);
+		}
+		public Syntax getSyntax() {
+			return SyntaxJ.commandSyntax(new int[]{Syntax.StringType()});
+		}
+		public void perform(Argument args[], Context context) throws ExtensionException, LogoException {
+			schedule.saveTemplate(TimeUtils.getStringFromArgument(args, 0), (ExtensionContext)context);
+		}
+	}
+	
+	public static class ScheduleTemplateNames extends ScheduleReporter {
+		public ScheduleTemplateNames(LogoSchedule schedule){
+			super(schedule);
+		}
+		public Syntax getSyntax() {
+			return SyntaxJ.reporterSyntax(new int[]{},Syntax.ListType());
+		}
+		public Object report(Argument args[], Context context) throws ExtensionException, LogoException {
+			return schedule.getTemplateNames();
+		}
+	}
+	
+	public static class InstantiateScheduleTemplate extends ScheduleCommand {
+		public InstantiateScheduleTemplate(LogoSchedule schedule){
+			super(schedule);
+		}
+		public Syntax getSyntax() {
+			return SyntaxJ.commandSyntax(new int[]{Syntax.StringType()});
+		}
+		public void perform(Argument args[], Context context) throws ExtensionException, LogoException {
+			schedule.instantiateTemplate(TimeUtils.getStringFromArgument(args, 0), (ExtensionContext)context);
 		}
 	}
 	
@@ -2,6 +2,7 @@ package time.primitives;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 import org.nlogo.api.Argument;
+import org.nlogo.api.Command;
 import org.nlogo.api.Context;
 import org.nlogo.api.Reporter;
 import org.nlogo.api.ExtensionException;
@@ -11,9 +12,12 @@ import org.nlogo.core.SyntaxJ;
 import org.nlogo.nvm.ExtensionContext;
 
 import time.TimeExtension;
+import time.TimeLogger;
 import time.TimeUtils;
 import time.TimeEnums.PeriodType;
+import time.datatypes.LogoSchedule;
 import time.datatypes.LogoTime;
+import time.datatypes.TimeFormats;
 
 public class TimePrimitives {
 	public static class NewLogoTime implements Reporter {
@@ -22,13 +26,18 @@ public class TimePrimitives {
 					Syntax.WildcardType());
 		}
 		public Object report(Argument args[], Context context) throws ExtensionException, LogoException {
-			TimeExtension.context = context; // for debugging
 			LogoTime time = new LogoTime(TimeUtils.getStringFromArgument(args, 0));
 			return time;
 		}
 	}
 
 	public static class Anchor implements Reporter {
+		// The schedule of the workspace, which shares the anchors of times anchored the same way
+		private final LogoSchedule schedule;
+
+		public Anchor(LogoSchedule schedule){
+			this.schedule = schedule;
+		}
 		public Syntax getSyntax() {
 			return SyntaxJ.reporterSyntax(new int[]{Syntax.WildcardType(),Syntax.NumberType(),Syntax.StringType()},
 					Syntax.WildcardType());
@@ -38,7 +47,7 @@ public class TimePrimitives {
 			LogoTime newTime = new LogoTime(time);
 			newTime.setAnchor(TimeUtils.getDoubleFromArgument(args, 1),
 					TimeUtils.stringToPeriodType(TimeUtils.getStringFromArgument(args, 2)),
-					((ExtensionContext)context).workspace().world());
+					((ExtensionContext)context).workspace().world(), schedule);
 			return newTime;
 		}
 	}
@@ -53,7 +62,7 @@ public class TimePrimitives {
 			String fmtString = TimeUtils.getStringFromArgument(args, 1);
 			DateTimeFormatter fmt = null;
 			if(fmtString.trim().equals("")){
-				fmt = DateTimeFormat.forPattern("yyyy-MM-dd HH:mm:ss.SSS");
+				fmt = TimeFormats.DATETIME;
 			}else{
 				fmt = DateTimeFormat.forPattern(fmtString);
 			}
@@ -78,7 +87,6 @@ public class TimePrimitives {
 					Syntax.WildcardType());
 		}
 		public Object report(Argument args[], Context context) throws ExtensionException, LogoException {
-			TimeExtension.context = context; // for debugging
 			LogoTime time = new LogoTime(TimeUtils.getStringFromArgument(args, 0),TimeUtils.getStringFromArgument(args, 1));
 			return time;
 		}
@@ -168,4 +176,32 @@ public class TimePrimitives {
 			return time.plus(TimeUtils.stringToPeriodType(TimeUtils.getStringFromArgument(args, 2)), TimeUtils.getDoubleFromArgument(args, 1));
 		}
 	}
-}
\ No newline at end of file
+	
+	public static class SetLogLevel implements Command {
+		private final TimeLogger log;
+
+		public SetLogLevel(TimeLogger log){
+			this.log = log;
+		}
+		public Syntax getSyntax() {
+			return SyntaxJ.commandSyntax(new int[]{Syntax.StringType()});
+		}
+		public void perform(Argument args[], Context context) throws ExtensionException, LogoException {
+			log.setLevel(TimeLogger.stringToLevel(TimeUtils.getStringFromArgument(args, 0)));
+		}
+	}
+	
+	public static class SetLogFile implements Command {
+		private final TimeLogger log;
+
+		public SetLogFile(TimeLogger log){
+			this.log = log;
+		}
+		public Syntax getSyntax() {
+			return SyntaxJ.commandSyntax(new int[]{Syntax.StringType()});
+		}
+		public void perform(Argument args[], Context context) throws ExtensionException, LogoException {
+			log.setFile(TimeUtils.resolveFile(TimeUtils.getStringFromArgument(args, 0), (ExtensionContext)context));
+		}
+	}
+}
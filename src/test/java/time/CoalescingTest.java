@@ -0,0 +1,127 @@
+package time;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nlogo.headless.HeadlessWorkspace;
+
+/*
+ * time:set-coalescing merges single agent events behind the model's back, so an event handed out by
+ * time:last-scheduled-event must only ever hold the agent it was scheduled for.  The extension is loaded from the
+ * netlogo.extensions.dir set up by the test task in build.gradle.
+ */
+public class CoalescingTest {
+	static final String SOURCE = "extensions [time] globals [step-task any-task ran] " +
+			"to setup clear-all reset-ticks time:set-coalescing true set ran [] set step-task [ [] -> set ran lput who ran ] " +
+			"set any-task [ [] -> set ran lput self ran ] create-turtles 3 end";
+
+	HeadlessWorkspace workspace;
+
+	@Before
+	public void open() throws Exception{
+		workspace = HeadlessWorkspace.newInstance();
+		workspace.initForTesting(0, SOURCE);
+		workspace.command("setup");
+	}
+	@After
+	public void close() throws Exception{
+		workspace.dispose();
+	}
+
+	@Test
+	public void cancellingAHandleOnlyCancelsItsAgent() throws Exception{
+		workspace.command("time:schedule-event turtle 0 step-task 1 " +
+				"let handle time:last-scheduled-event " +
+				"time:schedule-event turtle 1 step-task 1 " +
+				"time:schedule-event turtle 2 step-task 1 " +
+				"time:cancel-event handle");
+		// turtles 1 and 2 were merged with each other but not into the event whose handle was taken
+		assertEquals(1.0, coalesced(), 0);
+		workspace.command("time:go");
+		assertEquals("[1 2]", workspace.report("(word ran)"));
+	}
+	@Test
+	public void aMergedEventHasNoHandle() throws Exception{
+		workspace.command("time:schedule-event turtle 0 step-task 1 time:schedule-event turtle 1 step-task 1");
+		assertEquals(1.0, coalesced(), 0);
+		try{
+			workspace.command("let handle time:last-scheduled-event");
+			fail("time:last-scheduled-event reported an event that other agents had been merged into");
+		}catch(Exception e){
+			assertTrue(e.getMessage(), e.getMessage().contains("merged"));
+		}
+		workspace.command("time:go");
+		assertEquals("[0 1]", workspace.report("(word ran)"));
+	}
+	@Test
+	public void theNextEventAfterAMergeHasAHandleAgain() throws Exception{
+		workspace.command("time:schedule-event turtle 0 step-task 1 " +
+				"time:schedule-event turtle 1 step-task 1 " +
+				"time:schedule-event turtle 2 step-task 2 " +
+				"time:cancel-event time:last-scheduled-event " +
+				"time:go");
+		assertEquals("[0 1]", workspace.report("(word ran)"));
+	}
+	@Test
+	public void mergedAgentsCanBeUnscheduledAfterATemplate() throws Exception{
+		workspace.command("time:schedule-event turtle 0 step-task 1 " +
+				"time:schedule-event turtle 1 step-task 1 " +
+				"time:schedule-event turtle 2 step-task 1 " +
+				"time:save-schedule-template \"merged\" " +
+				"time:instantiate-schedule-template \"merged\" " +
+				"time:unschedule-agent turtle 1 " +
+				"time:go");
+		assertEquals("[0 2]", workspace.report("(word ran)"));
+	}
+	@Test
+	public void mergedAgentsCanBeUnscheduledAfterASave() throws Exception{
+		java.io.File file = java.io.File.createTempFile("coalesced", ".schedule");
+		try{
+			String path = file.getAbsolutePath().replace("\\", "\\\\");
+			workspace.command("time:schedule-event turtle 0 step-task 1 " +
+					"time:schedule-event turtle 1 step-task 1 " +
+					"time:schedule-event turtle 2 step-task 1 " +
+					"time:save-schedule \"" + path + "\" " +
+					"time:clear-schedule " +
+					"time:load-schedule \"" + path + "\" (list step-task) " +
+					"time:unschedule-agent turtle 1 " +
+					"time:go");
+			assertEquals("[0 2]", workspace.report("(word ran)"));
+		}finally{
+			file.delete();
+		}
+	}
+	@Test
+	public void agentsOfDifferentKindsAreNotMerged() throws Exception{
+		workspace.command("time:schedule-event turtle 0 any-task 1 time:schedule-event patch 0 0 any-task 1");
+		assertEquals(0.0, coalesced(), 0);
+		// The turtle and the patch have the same id, a merged event would be saved with one agent kind for both
+		workspace.command("time:save-schedule-template \"mixed\" " +
+				"time:instantiate-schedule-template \"mixed\" " +
+				"time:go");
+		assertEquals("[(turtle 0) (patch 0 0)]", workspace.report("(word ran)"));
+	}
+	@Test
+	public void agentsOfDifferentKindsSurviveASave() throws Exception{
+		java.io.File file = java.io.File.createTempFile("mixed", ".schedule");
+		try{
+			String path = file.getAbsolutePath().replace("\\", "\\\\");
+			workspace.command("time:schedule-event turtle 0 any-task 1 " +
+					"time:schedule-event patch 0 0 any-task 1 " +
+					"time:save-schedule \"" + path + "\" " +
+					"time:clear-schedule " +
+					"time:load-schedule \"" + path + "\" (list any-task) " +
+					"time:go");
+			assertEquals("[(turtle 0) (patch 0 0)]", workspace.report("(word ran)"));
+		}finally{
+			file.delete();
+		}
+	}
+
+	private double coalesced() throws Exception{
+		return (Double)workspace.report("last first filter [ pair -> first pair = \"coalesced\" ] time:schedule-stats");
+	}
+}
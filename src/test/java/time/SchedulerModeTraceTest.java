@@ -0,0 +1,100 @@
+package time;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+
+import org.junit.Test;
+import org.nlogo.headless.HeadlessWorkspace;
+
+import time.datatypes.EventTraceReader;
+
+/*
+ * Runs one seeded random model through LogoSchedule under each scheduler mode and checks that every mode dispatches
+ * the same task runs in the same order, comparing the traces written by time:start-trace and the order the model saw.
+ * Besides single and repeating events at whole and fractional ticks and shuffled agentset events, the tasks schedule
+ * and cancel events while their cohort is being dispatched, including events for the tick being dispatched.  The heap
+ * mode is the reference, EventQueueTest checks its queue against the TreeSet the schedule used before the modes.
+ */
+public class SchedulerModeTraceTest {
+	static final String[] MODES = {"calendar", "wheel"};
+	static final int TICKS = 150;
+	static final String SOURCE = "extensions [time] globals [tasks handles ran] " +
+			"to setup [mode] " +
+			"  clear-all reset-ticks random-seed 42 " +
+			"  time:set-scheduler-mode mode " +
+			"  set ran [] set handles [] " +
+			"  set tasks (list [ [] -> act 0 ] [ [] -> act 1 ] [ [] -> act 2 ]) " +
+			"  create-turtles 60 " +
+			"  ask turtles [ " +
+			"    time:schedule-repeating-event self item (who mod 3) tasks start-tick (1 + random 3) " +
+			"    set handles lput time:last-scheduled-event handles " +
+			"    time:schedule-event self item (random 3) tasks start-tick " +
+			"    set handles lput time:last-scheduled-event handles " +
+			"  ] " +
+			"  time:schedule-event-shuffled turtles item 0 tasks 5 " +
+			"  time:schedule-repeating-event-shuffled turtles with [who mod 2 = 0] item 1 tasks 2.5 4 " +
+			"end " +
+			"to-report start-tick " +
+			"  report ifelse-value (random 4 = 0) [ random 10 + 0.5 ] [ random 10 ] " +
+			"end " +
+			"to act [n] " +
+			"  set ran lput (word ticks \" \" n \" \" self) ran " +
+			// Schedule while the cohort runs, random 3 = 0 schedules for the tick being dispatched
+			"  if random 4 = 0 and time:size-of-schedule < 500 [ " +
+			"    ifelse random 2 = 0 " +
+			"      [ time:schedule-event one-of turtles item (random 3) tasks (ticks + random 3) ] " +
+			"      [ time:schedule-repeating-event one-of turtles item (random 3) tasks (ticks + random 3 + 0.25 * random 2) (1 + random 2) ] " +
+			"    set handles lput time:last-scheduled-event handles " +
+			"  ] " +
+			// Cancel while the cohort runs, the event may be pending, part of this cohort or already gone
+			"  if random 5 = 0 and not empty? handles [ " +
+			"    let i random length handles " +
+			"    time:cancel-event item i handles " +
+			"    set handles remove-item i handles " +
+			"  ] " +
+			"end";
+
+	@Test
+	public void everyModeDispatchesLikeTheHeap() throws Exception{
+		File reference = File.createTempFile("heap", ".trace");
+		try{
+			String expected = run("heap", reference);
+			for(String mode : MODES){
+				File trace = File.createTempFile(mode, ".trace");
+				try{
+					String actual = run(mode, trace);
+					ByteArrayOutputStream comparison = new ByteArrayOutputStream();
+					boolean same = EventTraceReader.compare(reference.getPath(), trace.getPath(), new PrintStream(comparison, true));
+					assertTrue(mode+" mode: "+comparison, same);
+					assertEquals(mode+" mode, the order the model saw", expected, actual);
+				}finally{
+					trace.delete();
+				}
+			}
+		}finally{
+			reference.delete();
+		}
+	}
+
+	/*
+	 * Runs the model under a scheduler mode with a trace, and reports the task runs in the order the model saw them.
+	 * Each run gets a fresh workspace, so the event ids in the traces start from the same number.
+	 */
+	private String run(String mode, File trace) throws Exception{
+		HeadlessWorkspace workspace = HeadlessWorkspace.newInstance();
+		try{
+			workspace.initForTesting(0, SOURCE);
+			workspace.command("setup \""+mode+"\" " +
+					"time:start-trace \""+trace.getAbsolutePath().replace("\\", "\\\\")+"\" " +
+					"time:go-until "+TICKS+" " +
+					"time:stop-trace");
+			assertTrue(mode+" mode ran too few tasks", (Double)workspace.report("length ran") > 1000);
+			return workspace.report("ran").toString();
+		}finally{
+			workspace.dispose();
+		}
+	}
+}
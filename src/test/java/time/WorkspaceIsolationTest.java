@@ -0,0 +1,114 @@
+package time;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nlogo.headless.HeadlessWorkspace;
+
+/*
+ * Each workspace loads its own instance of the extension and so has its own schedule.  Runs models with different
+ * numbers of turtles in several workspaces at once, as parallel BehaviorSpace runs do, and checks that every workspace
+ * dispatches exactly what it does when run on its own, and that each keeps its own log level.
+ */
+public class WorkspaceIsolationTest {
+	static final int WORKSPACES = 2;
+	static final int TICKS = 500;
+	static final String SOURCE = "extensions [time] globals [step-task ran] " +
+			"to setup [n] clear-all reset-ticks time:reset-schedule-stats set ran 0 set step-task [ [] -> set ran ran + 1 ] " +
+			"create-turtles n [ time:schedule-repeating-event self step-task 1 1 ] end";
+
+	ArrayList<HeadlessWorkspace> workspaces = new ArrayList<HeadlessWorkspace>();
+
+	@Before
+	public void open() throws Exception{
+		for(int i = 0; i < WORKSPACES; i++){
+			HeadlessWorkspace workspace = HeadlessWorkspace.newInstance();
+			workspace.initForTesting(0, SOURCE);
+			workspaces.add(workspace);
+		}
+	}
+	@After
+	public void close() throws Exception{
+		for(HeadlessWorkspace workspace : workspaces){
+			workspace.dispose();
+		}
+	}
+
+	@Test
+	public void workspacesOnlyRunTheirOwnEvents() throws Exception{
+		String[] alone = new String[WORKSPACES];
+		for(int i = 0; i < WORKSPACES; i++){
+			alone[i] = run(i);
+			// Each workspace has a different number of turtles, so a shared schedule would show up in every count
+			assertEquals("workspace "+i+" run alone", (100 * (i + 1) * TICKS)+" "+(100 * (i + 1) * TICKS)+" "+(100 * (i + 1)), alone[i]);
+		}
+		String[] together = runTogether();
+		for(int i = 0; i < WORKSPACES; i++){
+			assertEquals("workspace "+i+" run alongside the others", alone[i], together[i]);
+		}
+	}
+	@Test
+	public void workspacesKeepTheirOwnLog() throws Exception{
+		File[] logs = new File[WORKSPACES];
+		try{
+			for(int i = 0; i < WORKSPACES; i++){
+				logs[i] = File.createTempFile("isolation"+i, ".log");
+				workspaces.get(i).command("time:set-log-file \""+logs[i].getAbsolutePath().replace("\\", "\\\\")+"\"");
+			}
+			// Only the first workspace logs, a log shared between workspaces would get the others' messages too
+			workspaces.get(0).command("time:set-log-level \"debug\"");
+			runTogether();
+			workspaces.get(0).command("time:set-log-level \"off\"");
+			assertTrue("the first workspace's log is empty", logs[0].length() > 0);
+			for(int i = 1; i < WORKSPACES; i++){
+				assertEquals("size of workspace "+i+"'s log", 0, logs[i].length());
+			}
+		}finally{
+			for(File log : logs){
+				if(log != null)log.delete();
+			}
+		}
+	}
+
+	/*
+	 * Runs workspace i's model and reports its count of task runs, the schedule's count of dispatched events and the
+	 * number of events still on the schedule.
+	 */
+	private String run(int i) throws Exception{
+		HeadlessWorkspace workspace = workspaces.get(i);
+		workspace.command("setup "+(100 * (i + 1)));
+		workspace.command("time:go-until "+TICKS);
+		return workspace.report("(word ran \" \" last first filter [ pair -> first pair = \"dispatched\" ] time:schedule-stats " +
+				"\" \" time:size-of-schedule)").toString();
+	}
+	private String[] runTogether() throws Exception{
+		ExecutorService executor = Executors.newFixedThreadPool(WORKSPACES);
+		try{
+			ArrayList<Future<String>> results = new ArrayList<Future<String>>();
+			for(int i = 0; i < WORKSPACES; i++){
+				final int index = i;
+				results.add(executor.submit(new Callable<String>(){
+					public String call() throws Exception{
+						return run(index);
+					}
+				}));
+			}
+			String[] together = new String[WORKSPACES];
+			for(int i = 0; i < WORKSPACES; i++){
+				together[i] = results.get(i).get();
+			}
+			return together;
+		}finally{
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package time.datatypes;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+import org.nlogo.agent.AgentSet;
+
+import time.TimeEnums.PeriodType;
+
+/*
+ * Runs the same random stream of adds, batch adds, cancellations and tick-cohort dispatches (with repeating events
+ * put back the way LogoSchedule does) through every scheduler mode and through a TreeSet ordered by the
+ * LogoEventComparator, which is what the schedule was before the modes existed, and checks that they all dispatch
+ * exactly the same events in the same order.
+ */
+public class EventQueueTest {
+	static final int SEEDS = 50;
+	static final int STEPS = 2000;
+
+	@Test
+	public void integralTicks(){
+		compareModes(0.0, 20);
+	}
+	@Test
+	public void fractionalTicks(){
+		compareModes(1.0, 20);
+	}
+	@Test
+	public void mixedTicks(){
+		compareModes(0.3, 200);
+	}
+	@Test
+	public void widelySpreadTicks(){
+		// Far enough to use the timing wheel's outer wheel and to overflow past it
+		compareModes(0.1, 3000000);
+	}
+
+	private void compareModes(double fractionalShare, int spread){
+		for(long seed = 0; seed < SEEDS; seed++){
+			ArrayList<String> expected = trace(new TreeSetQueue(), seed, fractionalShare, spread);
+			compare("heap", expected, trace(new LogoEventHeap(), seed, fractionalShare, spread), seed);
+			compare("calendar", expected, trace(new CalendarEventQueue(), seed, fractionalShare, spread), seed);
+			compare("wheel", expected, trace(new TimingWheelEventQueue(), seed, fractionalShare, spread), seed);
+		}
+	}
+	private void compare(String mode, ArrayList<String> expected, ArrayList<String> actual, long seed){
+		for(int i = 0; i < Math.min(expected.size(), actual.size()); i++){
+			if(!expected.get(i).equals(actual.get(i)))fail(mode+" mode differs at step "+i+" of seed "+seed+": expected "+expected.get(i)+" but was "+actual.get(i));
+		}
+		assertEquals(mode+" mode trace length for seed "+seed, expected.size(), actual.size());
+	}
+	private ArrayList<String> trace(EventQueue queue, long seed, double fractionalShare, int spread){
+		Random random = new Random(seed);
+		ArrayList<String> trace = new ArrayList<String>();
+		ArrayList<LogoEvent> pending = new ArrayList<LogoEvent>();
+		ArrayList<LogoEvent> cohort = new ArrayList<LogoEvent>();
+		long nextId = 0;
+		double now = 0;
+		for(int step = 0; step < STEPS; step++){
+			int adds = random.nextInt(8);
+			ArrayList<LogoEvent> batch = random.nextInt(5) == 0 ? new ArrayList<LogoEvent>() : null;
+			for(int i = 0; i < adds; i++){
+				LogoEvent event = randomEvent(random, nextId++, now, fractionalShare, spread);
+				pending.add(event);
+				if(batch != null){
+					batch.add(event);
+				}else{
+					queue.add(event);
+				}
+			}
+			if(batch != null)queue.addAll(batch);
+			if(!pending.isEmpty() && random.nextInt(4) == 0){
+				LogoEvent cancelled = pending.remove(random.nextInt(pending.size()));
+				trace.add((queue.remove(cancelled) ? "cancelled " : "missing ")+cancelled.id);
+			}
+			if(queue.isEmpty())continue;
+			queue.pollCohort(cohort);
+			now = cohort.get(0).tick;
+			for(LogoEvent event : cohort){
+				trace.add(event.id+" at "+event.tick);
+				if(event.repeatInterval != null && random.nextInt(10) != 0){
+					event.tick += event.repeatInterval;
+					queue.add(event);
+				}else{
+					pending.remove(event);
+				}
+			}
+			cohort.clear();
+		}
+		while(!queue.isEmpty()){
+			LogoEvent event = queue.poll();
+			trace.add(event.id+" at "+event.tick);
+		}
+		return trace;
+	}
+	private LogoEvent randomEvent(Random random, long id, double now, double fractionalShare, int spread){
+		boolean fractional = random.nextDouble() < fractionalShare;
+		// Many events share a tick, including the tick being dispatched
+		double tick = now + (random.nextInt(3) == 0 ? 0 : random.nextInt(spread));
+		if(fractional)tick += random.nextInt(4) * 0.25 + 0.125;
+		Double repeatInterval = null;
+		PeriodType periodType = null;
+		if(random.nextInt(3) == 0){
+			repeatInterval = fractional ? 0.5 + random.nextInt(4) * 0.25 : (double)(1 + random.nextInt(5));
+			// Calendar repeats always overflow out of the timing wheel, the interval is only advanced here
+			if(random.nextInt(10) == 0)periodType = PeriodType.MONTH;
+		}
+		return new LogoEvent(id, (AgentSet)null, null, tick, repeatInterval, periodType, false);
+	}
+
+	/*
+	 * The schedule as it was before the scheduler modes, a TreeSet ordered by the LogoEventComparator.
+	 */
+	static class TreeSetQueue implements EventQueue {
+		private final TreeSet<LogoEvent> events = new TreeSet<LogoEvent>(new LogoEventComparator());
+
+		public void add(LogoEvent event){
+			event.queueIndex = 0;
+			events.add(event);
+		}
+		public void addAll(ArrayList<LogoEvent> batch){
+			for(LogoEvent event : batch){
+				add(event);
+			}
+		}
+		public LogoEvent peek(){
+			return events.isEmpty() ? null : events.first();
+		}
+		public LogoEvent poll(){
+			LogoEvent event = events.pollFirst();
+			if(event != null)event.queueIndex = -1;
+			return event;
+		}
+		public void pollCohort(ArrayList<LogoEvent> cohort){
+			LogoEvent first = poll();
+			if(first == null)return;
+			cohort.add(first);
+			while(!events.isEmpty() && events.first().tick == first.tick){
+				cohort.add(poll());
+			}
+		}
+		public boolean remove(LogoEvent event){
+			if(event.queueIndex < 0 || !events.remove(event))return false;
+			event.queueIndex = -1;
+			return true;
+		}
+		public int size(){
+			return events.size();
+		}
+		public boolean isEmpty(){
+			return events.isEmpty();
+		}
+		public void clear(){
+			for(LogoEvent event : events){
+				event.queueIndex = -1;
+			}
+			events.clear();
+		}
+		public LogoEvent[] toSortedArray(){
+			return events.toArray(new LogoEvent[events.size()]);
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package time.datatypes;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.joda.time.LocalDate;
+import org.joda.time.LocalDateTime;
+import org.joda.time.MonthDay;
+import org.junit.Test;
+
+/*
+ * new LogoTime(String) reads the common forms of time string in one pass (parseDateStringFast) and hands anything
+ * else to parseDateString and Joda's parser.  These tests check that every string, valid or not, comes out exactly as
+ * it did when every string went through parseDateString and Joda: the same date type and value, or the same exception
+ * and message.
+ */
+public class LogoTimeParseTest {
+	static final int RANDOM_STRINGS = 200000;
+	static final String ALPHABET = "0123456789-/: T.";
+	static final String[] SEEDS = {
+		"2012-11-10T09:08:07.654", "2012-11-10 09:08:07.654", "2012/11/10 09:08:07.654", "2012-1-1 9:08", "2000/1/02",
+		"2000-02-29 23:59:59.999", "2000-01-02 3", "2000-01-02T03:04:05.6", "01-1", "1-01", "12-31", "02-29",
+		" 2000-01-01", "2000-01-01\t", "now", ""
+	};
+
+	@Test
+	public void fieldWidths(){
+		assertSame("2012-01-02", "2012-1-2", "2012-01-2", "2012-1-02", "2012/1/2", "2012-01-02 3", "2012-01-02 03",
+				"2012-1-2 3:04", "2012-01-02 03:04", "2012-01-02T3:04:05", "2012-01-02 03:04:05", "2012-01-02 03:04:05.6",
+				"2012-01-02 03:04:05.67", "2012-01-02 03:04:05.678", "2012-01-02 03:04:05.6789", "0012-01-02", "12012-01-02",
+				"1-2", "01-2", "1-02", "01-02", "001-02", "01-002");
+	}
+	@Test
+	public void missingParts(){
+		assertSame("2012", "2012-", "2012-01", "2012-01-", "2012--02", "-01-02", "2012-01-02 ", "2012-01-02T",
+				"2012-01-02 03:", "2012-01-02 03:04:", "2012-01-02 03:04:05.", "2012-01-02 :04", "01-", "-02", "1-", "-",
+				"now", " now ", "", " ");
+	}
+	@Test
+	public void invalidStrings(){
+		assertSame("2012-13-01", "2012-00-01", "2012-02-30", "2011-02-29", "2012-01-32", "2012-01-02 24:00",
+				"2012-01-02 23:60", "2012-01-02 23:59:60", "13-01", "02-30", "00-10", "2012-01-02x", "2012.01.02",
+				"2012-01-02 03-04", "2012-01-02  03:04", "2012-01-02T03:04:05Z", "2012-01-02 03:04:05+01:00", "abcd-ef-gh",
+				"+2012-01-02", "2012-+1-02", "2012-01-02 +3:04", "2012-01-02\n03:04", "\uFF11\uFF12-01", "12-01-2012");
+	}
+	@Test
+	public void errorMessages(){
+		for(String s : new String[]{ "2012-13-01", "2012-1", "123-01", "2012-01-02 03:04:05:06", "1-1-1" }){
+			String parsed = fresh(s);
+			assertTrue(s+" was read as "+parsed, parsed.startsWith("ERR "));
+			assertEquals("error for '"+s+"'", legacy(s), parsed);
+		}
+	}
+	@Test
+	public void randomStrings(){
+		Random random = new Random(42);
+		for(int i = 0; i < RANDOM_STRINGS; i++){
+			String s = random.nextBoolean() ? mutated(random) : generated(random);
+			assertEquals("reading '"+s+"'", legacy(s), fresh(s));
+		}
+	}
+
+	private void assertSame(String... strings){
+		for(String s : strings){
+			assertEquals("reading '"+s+"'", legacy(s), fresh(s));
+		}
+	}
+	/*
+	 * One of the seeds with up to three characters replaced, removed or inserted.
+	 */
+	private String mutated(Random random){
+		StringBuilder b = new StringBuilder(SEEDS[random.nextInt(SEEDS.length)]);
+		int edits = 1 + random.nextInt(3);
+		for(int e = 0; e < edits && b.length() > 0; e++){
+			int p = random.nextInt(b.length());
+			switch(random.nextInt(3)){
+			case 0:
+				b.setCharAt(p, ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+				break;
+			case 1:
+				b.deleteCharAt(p);
+				break;
+			default:
+				b.insert(p, ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+			}
+		}
+		return b.toString();
+	}
+	/*
+	 * A date or date and time with fields of random value and width, many of them out of range.
+	 */
+	private String generated(Random random){
+		StringBuilder b = new StringBuilder();
+		b.append(String.format("%04d%c%d%c%d", random.nextInt(3000), random.nextBoolean() ? '-' : '/', random.nextInt(14),
+				random.nextBoolean() ? '-' : '/', random.nextInt(33)));
+		if(random.nextInt(4) == 0)return b.toString();
+		b.append(random.nextBoolean() ? 'T' : ' ').append(random.nextInt(25));
+		if(random.nextBoolean()){
+			b.append(String.format(":%02d", random.nextInt(61)));
+			if(random.nextBoolean())b.append(String.format(":%02d.%0"+(1 + random.nextInt(3))+"d", random.nextInt(61), random.nextInt(1000)));
+		}
+		return b.toString();
+	}
+	/*
+	 * Reads a string the way LogoTime did before parseDateStringFast, with parseDateString and Joda.
+	 */
+	private String legacy(String s){
+		try{
+			LogoTime probe = new LogoTime("2000-01-01");
+			String padded = probe.parseDateString(s);
+			switch(probe.dateType){
+			case DATETIME:
+				return "DATETIME "+((padded.length() == 0 || padded.equals("now")) ? "now" : new LocalDateTime(padded).toString());
+			case DATE:
+				return "DATE "+new LocalDate(padded);
+			default:
+				return "DAY "+new MonthDay().parse(padded, TimeFormats.DAY);
+			}
+		}catch(Exception e){
+			return "ERR "+e.getClass().getName()+" "+e.getMessage();
+		}
+	}
+	private String fresh(String s){
+		try{
+			LogoTime time = new LogoTime(s);
+			switch(time.dateType){
+			case DATETIME:
+				// "now" can't be compared, it is a different time on each read
+				String trimmed = s.replace(' ', 'T').trim();
+				return "DATETIME "+((trimmed.length() == 0 || trimmed.equals("now")) ? "now" : time.datetime.toString());
+			case DATE:
+				return "DATE "+time.date;
+			default:
+				return "DAY "+time.monthDay;
+			}
+		}catch(Exception e){
+			return "ERR "+e.getClass().getName()+" "+e.getMessage();
+		}
+	}
+}